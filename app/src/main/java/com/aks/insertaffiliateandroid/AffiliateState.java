@@ -0,0 +1,93 @@
+package com.aks.insertaffiliateandroid;
+
+/**
+ * Immutable snapshot of the affiliate state the SDK keeps on device.
+ * A new instance is published on every write, so readers never see a half-updated state.
+ */
+final class AffiliateState {
+    static final AffiliateState EMPTY = new AffiliateState(null, null, 0, null);
+
+    final String referringLink;   // Short code of the current affiliate, or null
+    final String deviceId;        // Short unique device id, or null before init
+    final long storedDateSeconds; // When the current affiliate was stored, or 0
+    final String offerCode;       // Offer code for the current affiliate, or null
+
+    AffiliateState(String referringLink, String deviceId, long storedDateSeconds, String offerCode) {
+        this.referringLink = emptyToNull(referringLink);
+        this.deviceId = emptyToNull(deviceId);
+        this.storedDateSeconds = storedDateSeconds;
+        this.offerCode = emptyToNull(offerCode);
+    }
+
+    AffiliateState withReferringLink(String referringLink, long storedDateSeconds) {
+        return new AffiliateState(referringLink, deviceId, storedDateSeconds, offerCode);
+    }
+
+    AffiliateState withDeviceId(String deviceId) {
+        return new AffiliateState(referringLink, deviceId, storedDateSeconds, offerCode);
+    }
+
+    AffiliateState withOfferCode(String offerCode) {
+        return new AffiliateState(referringLink, deviceId, storedDateSeconds, offerCode);
+    }
+
+    boolean hasReferringLink() {
+        return referringLink != null;
+    }
+
+    /**
+     * The full affiliate identifier (shortCode-deviceId), or null if no affiliate is stored.
+     */
+    String identifier() {
+        if (referringLink == null) {
+            return null;
+        }
+        return referringLink + "-" + (deviceId != null ? deviceId : "");
+    }
+
+    /**
+     * Whether the stored attribution is still inside the given timeout.
+     * @param nowSeconds Current time in seconds since epoch
+     * @param timeoutSeconds Attribution timeout in seconds (0 or less = no timeout)
+     */
+    boolean isAttributionValid(long nowSeconds, long timeoutSeconds) {
+        if (timeoutSeconds <= 0) {
+            return true;
+        }
+        if (storedDateSeconds == 0) {
+            return false;
+        }
+        return nowSeconds - storedDateSeconds <= timeoutSeconds;
+    }
+
+    /**
+     * The identifier to report right now: null if no affiliate is stored or, unless
+     * ignoreTimeout is set, its attribution has expired.
+     */
+    String resolveIdentifier(boolean ignoreTimeout, long nowSeconds, long timeoutSeconds) {
+        SdkLog.v("Stored state - referringLink: {}, shortUniqueDeviceID: {}",
+                referringLink == null ? "empty" : referringLink,
+                deviceId == null ? "empty" : deviceId);
+
+        if (referringLink == null) {
+            SdkLog.e("[Insert Affiliate] No affiliate identifier found. Please set one before tracking events.");
+            SdkLog.v("No affiliate identifier found in storage");
+            return null;
+        }
+
+        // Check timeout only if not ignoring timeout and timeout is configured
+        if (!ignoreTimeout && !isAttributionValid(nowSeconds, timeoutSeconds)) {
+            SdkLog.i("[Insert Affiliate] Affiliate attribution has expired");
+            SdkLog.v("Affiliate attribution expired, returning null");
+            return null;
+        }
+
+        String identifier = identifier();
+        SdkLog.v("Found identifier: {}", identifier);
+        return identifier;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,156 @@
+package com.aks.insertaffiliateandroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory cache of {@link AffiliateState} in front of a {@link KeyValueStore}.
+ *
+ * The state is loaded once; after that every read is a single volatile field read. Writes
+ * publish a new snapshot immediately and persist it on a background serial executor, so
+ * callers on the main thread never wait for the disk.
+ */
+final class AffiliateStateStore {
+    static final String PREFS_NAME = "InsertAffiliate";
+    static final String KEY_REFERRING_LINK = "referring_link";
+    static final String KEY_DEVICE_ID = "shortUniqueDeviceID";
+    static final String KEY_STORED_DATE = "affiliate_stored_date";
+    static final String KEY_OFFER_CODE = "offer_code";
+
+    private static final Object instanceLock = new Object();
+    private static volatile AffiliateStateStore instance;
+    private static SharedPreferences preferences;
+
+    private final KeyValueStore backing;
+    private final Executor diskExecutor;
+    private final Object lock = new Object();
+    private volatile AffiliateState state;
+
+    AffiliateStateStore(KeyValueStore backing, Executor diskExecutor) {
+        this.backing = backing;
+        this.diskExecutor = diskExecutor;
+    }
+
+    static AffiliateStateStore instance(Context context) {
+        AffiliateStateStore store = instance;
+        if (store == null) {
+            synchronized (instanceLock) {
+                store = instance;
+                if (store == null) {
+                    store = new AffiliateStateStore(new SharedPreferencesStore(preferences(context)), SdkExecutors.disk());
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * The shared "InsertAffiliate" preferences, for keys that are not part of the snapshot.
+     */
+    static SharedPreferences preferences(Context context) {
+        synchronized (instanceLock) {
+            if (preferences == null) {
+                preferences = InsertAffiliateManager.appContext(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            }
+            return preferences;
+        }
+    }
+
+    // MARK: Static shortcuts for the shared instance
+    static AffiliateState get(Context context) {
+        return instance(context).current();
+    }
+
+    /**
+     * The shared snapshot if it has already been loaded, otherwise {@link AffiliateState#EMPTY}.
+     * Never touches the disk.
+     */
+    static AffiliateState peek() {
+        AffiliateStateStore store = instance;
+        AffiliateState current = store != null ? store.state : null;
+        return current != null ? current : AffiliateState.EMPTY;
+    }
+
+    static AffiliateState setReferringLink(Context context, String referringLink, long storedDateSeconds) {
+        return instance(context).updateReferringLink(referringLink, storedDateSeconds);
+    }
+
+    static AffiliateState setDeviceId(Context context, String deviceId) {
+        return instance(context).updateDeviceId(deviceId);
+    }
+
+    static AffiliateState setOfferCode(Context context, String offerCode) {
+        return instance(context).updateOfferCode(offerCode);
+    }
+
+    // MARK: Instance API
+    /**
+     * Returns the current snapshot, loading it from the backing store on first use.
+     */
+    AffiliateState current() {
+        AffiliateState current = state;
+        if (current != null) {
+            return current;
+        }
+        synchronized (lock) {
+            if (state == null) {
+                state = new AffiliateState(
+                        backing.getString(KEY_REFERRING_LINK, null),
+                        backing.getString(KEY_DEVICE_ID, null),
+                        backing.getLong(KEY_STORED_DATE, 0),
+                        backing.getString(KEY_OFFER_CODE, null));
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Stores a new affiliate and its attribution date.
+     */
+    AffiliateState updateReferringLink(String referringLink, long storedDateSeconds) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(KEY_REFERRING_LINK, referringLink);
+        values.put(KEY_STORED_DATE, storedDateSeconds);
+        synchronized (lock) {
+            return publish(current().withReferringLink(referringLink, storedDateSeconds), values);
+        }
+    }
+
+    AffiliateState updateDeviceId(String deviceId) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(KEY_DEVICE_ID, deviceId);
+        synchronized (lock) {
+            return publish(current().withDeviceId(deviceId), values);
+        }
+    }
+
+    /**
+     * Stores the offer code for the current affiliate; null or empty clears it.
+     */
+    AffiliateState updateOfferCode(String offerCode) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(KEY_OFFER_CODE, offerCode != null ? offerCode : "");
+        synchronized (lock) {
+            return publish(current().withOfferCode(offerCode), values);
+        }
+    }
+
+    // Must hold lock, so snapshots are published and queued for disk in the same order
+    private AffiliateState publish(AffiliateState updated, Map<String, Object> values) {
+        state = updated;
+        diskExecutor.execute(() -> {
+            if (!backing.writeSync(values)) {
+                SdkLog.e("[Insert Affiliate] Failed to persist affiliate state, retrying once");
+                if (!backing.writeSync(values)) {
+                    SdkLog.e("[Insert Affiliate] Failed to persist affiliate state: " + values.keySet());
+                }
+            }
+        });
+        return updated;
+    }
+}
@@ -2,6 +2,8 @@ package com.aks.insertaffiliateandroid;
 
 import com.google.gson.JsonObject;
 
+import okhttp3.RequestBody;
+
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.Header;
@@ -25,5 +27,12 @@ public interface Api {
                 "Content-Type: application/json"
         })
         @POST("v1/trackEvent")
-        Call<JsonObject> trackevent(@Body JsonObject rawJsonString);
+        Call<JsonObject> trackevent(@Body RequestBody rawJsonString);
+
+        @Headers({
+                "Accept: application/json",
+                "Content-Type: application/json"
+        })
+        @POST("v1/trackEvents")
+        Call<JsonObject> trackevents(@Body RequestBody rawJsonArray);
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.aks.insertaffiliateandroid;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+/**
+ * Process-wide HTTP stack shared by every SDK request.
+ * One OkHttpClient means one connection pool and one TLS session cache, so back-to-back calls
+ * to the same host reuse a warm connection instead of paying for a new handshake.
+ *
+ * Every call has connect/read/write timeouts and an overall deadline, so a request on a
+ * captive-portal network fails in seconds instead of holding an SDK thread for minutes.
+ * Every call is also recorded in {@link SdkMetrics}.
+ */
+final class ApiClient {
+    static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    static final long DEFAULT_READ_TIMEOUT_MILLIS = 15_000;
+    static final long DEFAULT_CALL_TIMEOUT_MILLIS = 30_000;
+
+    private static volatile OkHttpClient client;
+    private static volatile Runnable onSuccessfulCall;
+
+    private ApiClient() {
+    }
+
+    /**
+     * The shared OkHttpClient (built on first use).
+     */
+    static OkHttpClient http() {
+        OkHttpClient current = client;
+        if (current == null) {
+            synchronized (ApiClient.class) {
+                current = client;
+                if (current == null) {
+                    current = new OkHttpClient.Builder()
+                            .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .retryOnConnectionFailure(true)
+                            .connectTimeout(DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                            .readTimeout(DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                            .writeTimeout(DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                            .callTimeout(DEFAULT_CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                            .eventListenerFactory(call -> new MetricsListener())
+                            .build();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the default timeouts for calls made from now on. The new client shares the
+     * connection pool and dispatcher with the old one.
+     */
+    static void setTimeouts(long connectMillis, long readMillis, long callMillis) {
+        synchronized (ApiClient.class) {
+            client = http().newBuilder()
+                    .connectTimeout(connectMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(readMillis, TimeUnit.MILLISECONDS)
+                    .writeTimeout(readMillis, TimeUnit.MILLISECONDS)
+                    .callTimeout(callMillis, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+    }
+
+    /**
+     * Cancels every SDK HTTP call that is queued or running. Outbox deliveries that get
+     * cancelled stay queued and are retried later.
+     */
+    static void cancelAll() {
+        OkHttpClient current = client;
+        if (current != null) {
+            current.dispatcher().cancelAll();
+        }
+    }
+
+    /**
+     * Runs the hook after every successful call, on the thread that finished it, so deferred
+     * work can go out while the network is known to be up and the connection is warm.
+     * Keep it cheap. Pass null to remove it.
+     */
+    static void setOnSuccessfulCall(Runnable hook) {
+        onSuccessfulCall = hook;
+    }
+
+    /**
+     * Records every call in {@link SdkMetrics}: latency from start to end, and the outcome.
+     */
+    private static final class MetricsListener extends EventListener {
+        private long startNanos;
+        private int statusCode;
+
+        @Override
+        public void callStart(Call call) {
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            statusCode = response.code();
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            boolean success = statusCode >= 200 && statusCode < 300;
+            record(call, success ? SdkMetrics.Outcome.SUCCESS : SdkMetrics.Outcome.FAILURE);
+            Runnable hook = onSuccessfulCall;
+            if (success && hook != null) {
+                try {
+                    hook.run();
+                } catch (Exception e) {
+                    SdkLog.e("[Insert Affiliate] Error after successful call: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException e) {
+            // SocketTimeoutException and expired call deadlines are InterruptedIOExceptions; cancellations are not
+            if (e instanceof InterruptedIOException) {
+                record(call, SdkMetrics.Outcome.TIMEOUT);
+            } else {
+                record(call, call.isCanceled() ? SdkMetrics.Outcome.CANCELLED : SdkMetrics.Outcome.FAILURE);
+            }
+        }
+
+        private void record(Call call, SdkMetrics.Outcome outcome) {
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            SdkMetrics.record(SdkMetrics.endpointOf(call.request().url()), outcome, statusCode, latencyMillis);
+        }
+    }
+
+    /**
+     * Cached Retrofit API for https://api.insertaffiliate.com/
+     */
+    static Api insertAffiliate() {
+        return InsertAffiliateHolder.API;
+    }
+
+    /**
+     * Cached Retrofit API for https://validator.iaptic.com/
+     */
+    static Api iaptic() {
+        return IapticHolder.API;
+    }
+
+    private static Api create(String baseUrl) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                // Resolved per call, so timeout changes also apply to Retrofit calls
+                .callFactory(request -> http().newCall(request))
+                .addConverterFactory(GsonConverterFactory.create())
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build()
+                .create(Api.class);
+    }
+
+    // Lazy holders: each is initialised by the class loader on first access, without locking on reads
+    private static final class InsertAffiliateHolder {
+        static final Api API = create(Api.BASE_URL_INSERT_AFFILIATE);
+    }
+
+    private static final class IapticHolder {
+        static final Api API = create(Api.BASE_URL_IAPTIC_VALIDATOR);
+    }
+}
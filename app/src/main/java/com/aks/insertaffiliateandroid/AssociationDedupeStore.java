@@ -0,0 +1,179 @@
+package com.aks.insertaffiliateandroid;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers which affiliate associations have already been reported, so each one is sent once.
+ * Also remembers which purchase tokens have been delivered as expected transactions.
+ *
+ * Identifiers are stored as 64-bit FNV-1a fingerprints with the time they were last seen, in a
+ * compact binary file that is loaded once and kept in memory. The set is capped: the least
+ * recently seen fingerprints are evicted beyond maxEntries, and entries older than the TTL
+ * are dropped.
+ */
+final class AssociationDedupeStore {
+    private static final int FILE_MAGIC = 0x49414453; // "IADS"
+    private static final int FILE_VERSION = 1;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final File file;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Executor diskExecutor;
+    private final LongSupplier clock;
+
+    // Access-ordered, so iteration starts at the least recently seen fingerprint
+    private final LinkedHashMap<Long, Long> lastSeenByFingerprint;
+    private boolean loaded = false;
+
+    AssociationDedupeStore(File file, int maxEntries, long ttlMillis, Executor diskExecutor, LongSupplier clock) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.diskExecutor = diskExecutor;
+        this.clock = clock;
+        this.lastSeenByFingerprint = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > AssociationDedupeStore.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Whether this identifier has already been reported (and not yet expired).
+     */
+    synchronized boolean contains(String identifier) {
+        loadIfNeeded();
+        long fingerprint = fingerprint(identifier);
+        Long lastSeen = lastSeenByFingerprint.get(fingerprint);
+        if (lastSeen == null) {
+            return false;
+        }
+        if (clock.getAsLong() - lastSeen > ttlMillis) {
+            lastSeenByFingerprint.remove(fingerprint);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the identifier as reported and persists the set in the background.
+     */
+    synchronized void add(String identifier) {
+        loadIfNeeded();
+        lastSeenByFingerprint.put(fingerprint(identifier), clock.getAsLong());
+        persist();
+    }
+
+    /**
+     * Imports identifiers recorded by older SDK versions (the reported_affiliate_associations
+     * JSON array).
+     */
+    synchronized void addAll(Iterable<String> identifiers) {
+        loadIfNeeded();
+        long now = clock.getAsLong();
+        for (String identifier : identifiers) {
+            lastSeenByFingerprint.put(fingerprint(identifier), now);
+        }
+        persist();
+    }
+
+    synchronized int size() {
+        loadIfNeeded();
+        return lastSeenByFingerprint.size();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the identifier's UTF-16 code units.
+     */
+    static long fingerprint(String identifier) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // MARK: Persistence
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                SdkLog.e("[Insert Affiliate] Ignoring unrecognised association store file");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long fingerprint = in.readLong();
+                long lastSeen = in.readLong();
+                if (now - lastSeen <= ttlMillis) {
+                    lastSeenByFingerprint.put(fingerprint, lastSeen);
+                }
+            }
+        } catch (IOException e) {
+            SdkLog.e("[Insert Affiliate] Failed to load association store: " + e.getMessage());
+        }
+    }
+
+    // Must hold the monitor; copies the entries so the write can run in the background
+    private void persist() {
+        int count = lastSeenByFingerprint.size();
+        long[] fingerprints = new long[count];
+        long[] lastSeen = new long[count];
+        Iterator<Map.Entry<Long, Long>> iterator = lastSeenByFingerprint.entrySet().iterator();
+        for (int i = 0; i < count; i++) {
+            Map.Entry<Long, Long> entry = iterator.next();
+            fingerprints[i] = entry.getKey();
+            lastSeen[i] = entry.getValue();
+        }
+        diskExecutor.execute(() -> write(fingerprints, lastSeen));
+    }
+
+    private void write(long[] fingerprints, long[] lastSeen) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(fingerprints.length);
+            for (int i = 0; i < fingerprints.length; i++) {
+                out.writeLong(fingerprints[i]);
+                out.writeLong(lastSeen[i]);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            SdkLog.e("[Insert Affiliate] Failed to write association store: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            SdkLog.e("[Insert Affiliate] Failed to replace association store file");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.aks.insertaffiliateandroid;
+
+import android.app.Activity;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Per-call settings for SDK lookups such as fetchOfferCode and getAffiliateDetails.
+ *
+ * <pre>
+ * SdkCall call = InsertAffiliateManager.fetchOfferCode(link,
+ *         CallOptions.timeout(2000).cancelWhenDestroyed(activity), offerCode -> { ... });
+ * </pre>
+ */
+public final class CallOptions {
+    /**
+     * No per-call deadline (the SDK's network timeouts still apply) and no scope.
+     */
+    public static final CallOptions DEFAULT = new CallOptions(0, null);
+
+    final long timeoutMillis;
+    final WeakReference<Activity> scope;
+
+    private CallOptions(long timeoutMillis, WeakReference<Activity> scope) {
+        this.timeoutMillis = timeoutMillis;
+        this.scope = scope;
+    }
+
+    /**
+     * Options with a deadline: if no result has arrived after timeoutMillis, the callback
+     * receives null and the call counts as timed out.
+     */
+    public static CallOptions timeout(long timeoutMillis) {
+        return DEFAULT.withTimeout(timeoutMillis);
+    }
+
+    public CallOptions withTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+        }
+        return new CallOptions(timeoutMillis, scope);
+    }
+
+    /**
+     * Cancels the call when the given activity is destroyed, so a late result never reaches a
+     * dead screen and the activity is not kept alive by the pending callback.
+     */
+    public CallOptions cancelWhenDestroyed(Activity activity) {
+        return new CallOptions(timeoutMillis, activity != null ? new WeakReference<>(activity) : null);
+    }
+}
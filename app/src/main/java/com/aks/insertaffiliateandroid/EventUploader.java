@@ -0,0 +1,127 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+/**
+ * Sends queued trackEvent payloads, one at a time or as a batch, for the event outbox.
+ * Stored payloads are sent as they are, without being parsed back into JSON objects.
+ */
+final class EventUploader implements Outbox.Sender, Outbox.BatchSender {
+    private final Supplier<Api> api;
+    private volatile String lastResultMessage = null;
+    private volatile boolean batchRouteMissing = false; // Set once the backend rejects v1/trackEvents
+
+    EventUploader(Supplier<Api> api) {
+        this.api = api;
+    }
+
+    /**
+     * The result message of the most recent delivery attempt, or null if none has finished yet.
+     */
+    String lastResultMessage() {
+        return lastResultMessage;
+    }
+
+    @Override
+    public Outbox.Result send(Outbox.Entry entry) {
+        InsertAffiliateManager.verboseLog("Making API call to track event...");
+        if (!Payloads.isJsonObject(entry.payload)) {
+            // Unreadable on disk; it can never succeed, so do not spend retries on it
+            SdkLog.e("[Insert Affiliate] Dropping unreadable queued event: " + entry.id);
+            lastResultMessage = "[Insert Affiliate] Failed to track event: unreadable payload";
+            return Outbox.Result.DROP;
+        }
+        try {
+            RequestBody body = RequestBody.create(entry.payload, ApiClient.JSON);
+            retrofit2.Response<JsonObject> response = api.get().trackevent(body).execute();
+            entry.lastStatusCode = response.code();
+            return handleResponse(response, 1);
+        } catch (IOException e) {
+            entry.lastStatusCode = 0;
+            return handleFailure(e, entry.attempts);
+        }
+    }
+
+    /**
+     * Sends the batch to v1/trackEvents. If the backend does not have that route (404 or 405),
+     * the events are handed back to be sent one by one to v1/trackEvent, never dropped, and
+     * later batches skip the batch route for the rest of the process. Any other rejection
+     * (e.g. 400 or 422) is handed back too, without disabling the route, so each event gets
+     * its own verdict and one bad event cannot drop the rest. A batch holding an unreadable
+     * payload is also handed back, so only that entry is dropped.
+     */
+    @Override
+    public Outbox.Result sendBatch(List<Outbox.Entry> batch) {
+        if (batchRouteMissing) {
+            return Outbox.Result.UNBATCHED;
+        }
+        SdkLog.v("Making API call to track {} batched events...", batch.size());
+        // The stored payloads, written between brackets as they are
+        Buffer events = new Buffer();
+        events.writeByte('[');
+        for (int i = 0; i < batch.size(); i++) {
+            String payload = batch.get(i).payload;
+            if (!Payloads.isJsonObject(payload)) {
+                return Outbox.Result.UNBATCHED;
+            }
+            if (i > 0) {
+                events.writeByte(',');
+            }
+            events.writeUtf8(payload);
+        }
+        events.writeByte(']');
+        try {
+            RequestBody body = RequestBody.create(events.readByteString(), ApiClient.JSON);
+            retrofit2.Response<JsonObject> response = api.get().trackevents(body).execute();
+            if (response.code() == 404 || response.code() == 405) {
+                batchRouteMissing = true;
+                SdkLog.i("[Insert Affiliate] Batch event endpoint unavailable (status " + response.code() + "), sending events one at a time");
+                return Outbox.Result.UNBATCHED;
+            }
+            if (batch.size() > 1 && Outbox.resultForStatus(response.code()) == Outbox.Result.DROP) {
+                SdkLog.i("[Insert Affiliate] Batch of " + batch.size() + " events rejected (status " + response.code() + "), sending them one at a time");
+                return Outbox.Result.UNBATCHED;
+            }
+            for (Outbox.Entry entry : batch) {
+                entry.lastStatusCode = response.code();
+            }
+            return handleResponse(response, batch.size());
+        } catch (IOException e) {
+            for (Outbox.Entry entry : batch) {
+                entry.lastStatusCode = 0;
+            }
+            return handleFailure(e, batch.get(0).attempts);
+        }
+    }
+
+    private Outbox.Result handleResponse(retrofit2.Response<JsonObject> response, int eventCount) {
+        int responseCode = response.code();
+        SdkLog.v("Track event API response status: {}", responseCode);
+        SdkLog.d("InsertAffiliate response: {}", response.body());
+
+        if (responseCode == 200) {
+            lastResultMessage = "[Insert Affiliate] Track Event Success";
+            SdkLog.i("[Insert Affiliate] Event tracked successfully" + (eventCount > 1 ? " (" + eventCount + " events)" : ""));
+            InsertAffiliateManager.verboseLog("Event tracked successfully on server");
+        } else {
+            lastResultMessage = "[Insert Affiliate] Failed to track event with status code: " + responseCode;
+            SdkLog.i("[Insert Affiliate] Failed to track event with status code: " + responseCode);
+            SdkLog.v("Track event API error: status {}, response: {}", responseCode, response.body());
+        }
+        return Outbox.resultForStatus(responseCode);
+    }
+
+    private Outbox.Result handleFailure(IOException e, int attempts) {
+        SdkLog.i("Error While Tracking Event");
+        SdkLog.v("Network error tracking event (attempt {}, will retry): {}", attempts + 1, e.getMessage());
+        lastResultMessage = "Error";
+        return Outbox.Result.RETRY;
+    }
+}
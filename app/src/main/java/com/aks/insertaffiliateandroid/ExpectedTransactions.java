@@ -0,0 +1,137 @@
+package com.aks.insertaffiliateandroid;
+
+import com.aks.insertaffiliateandroid.InsertAffiliateManager.TransactionDeliveryListener;
+import com.aks.insertaffiliateandroid.InsertAffiliateManager.TransactionDeliveryState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Delivers expected Play Store transactions to create-expected-transaction without losing them.
+ *
+ * Each transaction is keyed on its purchase token. It is written to its own outbox before it
+ * is sent, retried with backoff for hours rather than minutes, and reloaded after process
+ * death. A token that is already queued, or was delivered before, is not sent again.
+ * Transactions that queue up offline go out back to back in one drain, over the shared
+ * connection. Every state change is reported to the listener.
+ */
+final class ExpectedTransactions implements Outbox.Sender {
+    static final int MAX_QUEUED_TRANSACTIONS = 200;
+    static final int MAX_ATTEMPTS = 30; // With backoff capped at 10 minutes, about 4 hours of retries
+    static final int MAX_DELIVERED_TOKENS = 512;
+    static final long DELIVERED_TOKEN_TTL_MILLIS = TimeUnit.DAYS.toMillis(90);
+    static final long MAX_DEFER_MILLIS = TimeUnit.MINUTES.toMillis(2); // Kept short: the Play webhook follows the purchase closely
+
+    private final String url;
+    private final Supplier<Call.Factory> http;
+    private final Outbox outbox;
+    private final AssociationDedupeStore deliveredTokens;
+    private volatile TransactionDeliveryListener listener;
+
+    ExpectedTransactions(File directory, String url, Supplier<Call.Factory> http, Executor executor,
+                         ScheduledExecutorService scheduler, Executor diskExecutor, LongSupplier clock) {
+        this.url = url;
+        this.http = http;
+        this.outbox = new Outbox("Transaction", new File(directory, "insert_affiliate_transactions.outbox"),
+                MAX_QUEUED_TRANSACTIONS, MAX_ATTEMPTS, this, executor, scheduler, diskExecutor);
+        this.deliveredTokens = new AssociationDedupeStore(new File(directory, "insert_affiliate_transactions.bin"),
+                MAX_DELIVERED_TOKENS, DELIVERED_TOKEN_TTL_MILLIS, diskExecutor, clock);
+        outbox.setCompletionListener((entry, result) -> notify(entry.id,
+                result == Outbox.Result.DELIVERED ? TransactionDeliveryState.DELIVERED : TransactionDeliveryState.FAILED));
+    }
+
+    void setListener(TransactionDeliveryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Holds new transactions until the device is on an unmetered network or charging, for at
+     * most MAX_DEFER_MILLIS.
+     */
+    void setUploadScheduler(UploadScheduler scheduler) {
+        outbox.setUploadScheduler(scheduler, MAX_DEFER_MILLIS);
+    }
+
+    /**
+     * Queues the transaction for delivery unless this purchase token is already queued or
+     * was delivered before.
+     * @param payload The create-expected-transaction body
+     */
+    void store(String purchaseToken, String payload) {
+        // Checked on the outbox's thread, where send() records delivered tokens, so a
+        // delivery finishing meanwhile cannot let the same token be queued again
+        outbox.enqueueIfAbsent(purchaseToken, payload, deliveredTokens::contains, queued -> {
+            if (!queued) {
+                InsertAffiliateManager.verboseLog("Expected transaction already queued or stored for this purchase token, skipping");
+            }
+            notify(purchaseToken, queued ? TransactionDeliveryState.QUEUED : TransactionDeliveryState.DUPLICATE);
+        });
+    }
+
+    /**
+     * Sends transactions left queued by a previous session.
+     */
+    void drain() {
+        outbox.drain();
+    }
+
+    int size() {
+        return outbox.size();
+    }
+
+    @Override
+    public Outbox.Result send(Outbox.Entry entry) {
+        InsertAffiliateManager.verboseLog("Making API call to store expected transaction...");
+        Request request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(entry.payload, ApiClient.JSON))
+                .build();
+
+        Outbox.Result result;
+        try (Response response = http.get().newCall(request).execute()) {
+            int responseCode = response.code();
+            entry.lastStatusCode = responseCode;
+            SdkLog.v("API response status: {}", responseCode);
+            result = Outbox.resultForStatus(responseCode);
+            if (result == Outbox.Result.DELIVERED) {
+                deliveredTokens.add(entry.id);
+                SdkLog.i("[Insert Affiliate] Expected transaction stored successfully.");
+            } else {
+                String errorBody = response.body() != null ? response.body().string() : "";
+                SdkLog.e("[Insert Affiliate] Failed to store expected transaction with status code: " + responseCode + ". Response: " + errorBody);
+            }
+        } catch (IOException e) {
+            entry.lastStatusCode = 0;
+            SdkLog.e("[Insert Affiliate] Error storing expected transaction: " + e.getMessage());
+            result = Outbox.Result.RETRY;
+        }
+
+        // The outbox reports the final outcome; this attempt only matters if there will be another
+        if (result == Outbox.Result.RETRY && entry.attempts + 1 < MAX_ATTEMPTS) {
+            SdkLog.v("Expected transaction will be retried (attempt {})", entry.attempts + 1);
+            notify(entry.id, TransactionDeliveryState.RETRYING);
+        }
+        return result;
+    }
+
+    private void notify(String purchaseToken, TransactionDeliveryState state) {
+        TransactionDeliveryListener current = listener;
+        if (current != null) {
+            try {
+                current.onTransactionDeliveryStateChanged(purchaseToken, state);
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] Error in transaction delivery listener: " + e.getMessage());
+            }
+        }
+    }
+}
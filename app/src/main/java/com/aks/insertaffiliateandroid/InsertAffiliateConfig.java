@@ -0,0 +1,132 @@
+package com.aks.insertaffiliateandroid;
+
+/**
+ * Immutable SDK configuration, passed to {@link InsertAffiliateManager#init(android.content.Context, InsertAffiliateConfig)}.
+ *
+ * The manager publishes one instance at a time and every SDK operation reads it once, so an
+ * operation never sees half of an update. Use {@link InsertAffiliateManager#reconfigure} with
+ * {@link #toBuilder()} to change settings while the app is running.
+ *
+ * <pre>
+ * InsertAffiliateConfig config = new InsertAffiliateConfig.Builder("YOUR_COMPANY_CODE")
+ *         .setVerboseLogging(true)
+ *         .setAffiliateAttributionActiveTimeSeconds(604800)
+ *         .build();
+ * </pre>
+ */
+public final class InsertAffiliateConfig {
+    /** Used before init and after reset: no company code, everything off. */
+    static final InsertAffiliateConfig UNCONFIGURED = new Builder(null).build();
+
+    private final String companyCode;
+    private final boolean verboseLogging;
+    private final boolean insertLinks;
+    private final long affiliateAttributionActiveTimeSeconds;
+    private final boolean preventAffiliateTransfer;
+
+    private InsertAffiliateConfig(Builder builder) {
+        this.companyCode = builder.companyCode;
+        this.verboseLogging = builder.verboseLogging;
+        this.insertLinks = builder.insertLinks;
+        this.affiliateAttributionActiveTimeSeconds = builder.affiliateAttributionActiveTimeSeconds;
+        this.preventAffiliateTransfer = builder.preventAffiliateTransfer;
+    }
+
+    public String getCompanyCode() {
+        return companyCode;
+    }
+
+    boolean hasCompanyCode() {
+        return companyCode != null && !companyCode.isEmpty();
+    }
+
+    public boolean isVerboseLogging() {
+        return verboseLogging;
+    }
+
+    public boolean isInsertLinksEnabled() {
+        return insertLinks;
+    }
+
+    /**
+     * Time in seconds for affiliate attribution to remain active (0 = no timeout).
+     */
+    public long getAffiliateAttributionActiveTimeSeconds() {
+        return affiliateAttributionActiveTimeSeconds;
+    }
+
+    public boolean isPreventAffiliateTransfer() {
+        return preventAffiliateTransfer;
+    }
+
+    /**
+     * Returns a builder holding these settings, for deriving a changed configuration.
+     */
+    public Builder toBuilder() {
+        return new Builder(companyCode)
+                .setVerboseLogging(verboseLogging)
+                .setInsertLinks(insertLinks)
+                .setAffiliateAttributionActiveTimeSeconds(affiliateAttributionActiveTimeSeconds)
+                .setPreventAffiliateTransfer(preventAffiliateTransfer);
+    }
+
+    @Override
+    public String toString() {
+        return "InsertAffiliateConfig{companyCode=" + (hasCompanyCode() ? "set" : "missing")
+                + ", verboseLogging=" + verboseLogging
+                + ", insertLinks=" + insertLinks
+                + ", affiliateAttributionActiveTimeSeconds=" + affiliateAttributionActiveTimeSeconds
+                + ", preventAffiliateTransfer=" + preventAffiliateTransfer + "}";
+    }
+
+    public static final class Builder {
+        private String companyCode;
+        private boolean verboseLogging = false;
+        private boolean insertLinks = false;
+        private long affiliateAttributionActiveTimeSeconds = 0;
+        private boolean preventAffiliateTransfer = false;
+
+        public Builder(String companyCode) {
+            this.companyCode = companyCode;
+        }
+
+        public Builder setCompanyCode(String companyCode) {
+            this.companyCode = companyCode;
+            return this;
+        }
+
+        public Builder setVerboseLogging(boolean enabled) {
+            this.verboseLogging = enabled;
+            return this;
+        }
+
+        /**
+         * When set to true, the SDK captures the Play install referrer for deferred deep links
+         * at init. If you are using an external provider for deep links, leave this false.
+         */
+        public Builder setInsertLinks(boolean enabled) {
+            this.insertLinks = enabled;
+            return this;
+        }
+
+        /**
+         * @param seconds Time for affiliate attribution to remain active (0 = no timeout)
+         */
+        public Builder setAffiliateAttributionActiveTimeSeconds(long seconds) {
+            this.affiliateAttributionActiveTimeSeconds = Math.max(0, seconds);
+            return this;
+        }
+
+        /**
+         * When true, a new affiliate does not overwrite existing attribution.
+         */
+        public Builder setPreventAffiliateTransfer(boolean enabled) {
+            this.preventAffiliateTransfer = enabled;
+            return this;
+        }
+
+        public InsertAffiliateConfig build() {
+            return new InsertAffiliateConfig(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.aks.insertaffiliateandroid;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Trace;
+
+import androidx.startup.Initializer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * App Startup entry point that initializes the SDK from manifest meta-data, so it no longer
+ * has to be set up in an Activity.
+ *
+ * Only the configuration is applied here (see {@link InsertAffiliateManager#initDeferred});
+ * the device ID, stored state and install referrer are loaded in the background on first use.
+ * It can run from the App Startup provider, or without a provider through
+ * {@code AppInitializer.getInstance(this).initializeComponent(InsertAffiliateInitializer.class)}
+ * in Application.onCreate.
+ *
+ * <pre>
+ * &lt;meta-data android:name="com.aks.insertaffiliateandroid.COMPANY_CODE" android:value="YOUR_COMPANY_CODE" /&gt;
+ * </pre>
+ */
+public final class InsertAffiliateInitializer implements Initializer<Void> {
+    public static final String META_COMPANY_CODE = "com.aks.insertaffiliateandroid.COMPANY_CODE";
+    public static final String META_VERBOSE_LOGGING = "com.aks.insertaffiliateandroid.VERBOSE_LOGGING";
+    public static final String META_INSERT_LINKS = "com.aks.insertaffiliateandroid.INSERT_LINKS";
+    public static final String META_ATTRIBUTION_TIMEOUT_SECONDS = "com.aks.insertaffiliateandroid.ATTRIBUTION_TIMEOUT_SECONDS";
+    public static final String META_PREVENT_AFFILIATE_TRANSFER = "com.aks.insertaffiliateandroid.PREVENT_AFFILIATE_TRANSFER";
+
+    @Override
+    public Void create(Context context) {
+        Trace.beginSection("InsertAffiliate.startup");
+        try {
+            Bundle metaData = metaData(context);
+            // Numeric-looking values are parsed by aapt, so the company code may not be a String
+            Object code = metaData != null ? metaData.get(META_COMPANY_CODE) : null;
+            if (code == null) {
+                SdkLog.e("[Insert Affiliate] No " + META_COMPANY_CODE + " meta-data found, the SDK was not initialized.");
+                return null;
+            }
+            InsertAffiliateManager.initDeferred(context, new InsertAffiliateConfig.Builder(String.valueOf(code))
+                    .setVerboseLogging(metaData.getBoolean(META_VERBOSE_LOGGING, false))
+                    .setInsertLinks(metaData.getBoolean(META_INSERT_LINKS, false))
+                    .setAffiliateAttributionActiveTimeSeconds(metaData.getInt(META_ATTRIBUTION_TIMEOUT_SECONDS, 0))
+                    .setPreventAffiliateTransfer(metaData.getBoolean(META_PREVENT_AFFILIATE_TRANSFER, false))
+                    .build());
+            return null;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    @Override
+    public List<Class<? extends Initializer<?>>> dependencies() {
+        return Collections.emptyList();
+    }
+
+    private static Bundle metaData(Context context) {
+        try {
+            return context.getPackageManager()
+                    .getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA)
+                    .metaData;
+        } catch (PackageManager.NameNotFoundException e) {
+            SdkLog.e("[Insert Affiliate] Could not read manifest meta-data: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,51 +1,95 @@
 package com.aks.insertaffiliateandroid;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Looper;
+import android.os.Trace;
 import android.provider.Settings;
 import android.util.Base64;
-import android.util.Log;
 
+import androidx.work.WorkManager;
 import com.android.installreferrer.api.InstallReferrerClient;
-import com.android.installreferrer.api.InstallReferrerStateListener;
-import com.android.installreferrer.api.ReferrerDetails;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import okhttp3.OkHttpClient;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 import retrofit2.Call;
 import retrofit2.Callback;
-import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
-import retrofit2.converter.scalars.ScalarsConverterFactory;
 
 public class InsertAffiliateManager {
     private final Context context;
-    private static String companyCode;
     private String message = null;
-    private static String responseMessage = null;
-    private static boolean verboseLogging = false;
-    private static boolean insertLinks = false;
-    private static long affiliateAttributionActiveTime = 0; // Time in seconds for affiliate attribution to remain active (0 = no timeout)
-    private static boolean preventAffiliateTransfer = false; // When true, prevents new affiliates from overwriting existing attribution
+    // Replaced as a whole by init, reconfigure and reset; each operation reads it once
+    private static final AtomicReference<InsertAffiliateConfig> config = new AtomicReference<>(InsertAffiliateConfig.UNCONFIGURED);
+    private static final int MAX_QUEUED_EVENTS = 500; // Oldest queued events are evicted beyond this
+    private static final EventUploader eventUploader = new EventUploader(ApiClient::insertAffiliate);
+    private static volatile Outbox eventOutbox;
+    private static volatile ExpectedTransactions expectedTransactions;
+    private static volatile TransactionDeliveryListener transactionDeliveryListener;
+    private static final int MAX_REPORTED_ASSOCIATIONS = 256; // Least recently seen associations are forgotten beyond this
+    private static final long REPORTED_ASSOCIATION_TTL_MILLIS = TimeUnit.DAYS.toMillis(180);
+    private static volatile InstallReferrerCapture installReferrerCapture;
+    private static final StartupGate startupGate = new StartupGate();
+    private static volatile AssociationDedupeStore associationStore;
+    private static volatile OnboardingTelemetry onboardingTelemetry;
+    private static volatile UploadScheduler uploadScheduler;
+    private static volatile int eventBatchSize = 0; // 0 = batching disabled
+    private static volatile long eventBatchDelayMillis = 0;
+    private static final long OFFER_CODE_STALE_MILLIS = TimeUnit.HOURS.toMillis(24); // Cached offer codes are served while refreshing for this long after their TTL
+    private static final SingleFlightCache<String, String> offerCodeCache = new SingleFlightCache<>(
+            "Offer code",
+            64,
+            TimeUnit.MINUTES.toMillis(10),
+            TimeUnit.MINUTES.toMillis(1),
+            OFFER_CODE_STALE_MILLIS,
+            runnable -> SdkExecutors.io().execute(runnable),
+            System::currentTimeMillis);
+    private static final SingleFlightCache<String, AffiliateDetails> affiliateDetailsCache = new SingleFlightCache<>(
+            "Affiliate details",
+            128,
+            TimeUnit.MINUTES.toMillis(5),
+            TimeUnit.SECONDS.toMillis(30),
+            0,
+            runnable -> SdkExecutors.io().execute(runnable),
+            System::currentTimeMillis);
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+    private static final long READ_WAIT_MILLIS = 5_000; // How long a background read waits for an async init
+    private static final Object debounceLock = new Object();
+    private static final AtomicLong latestDebouncedLookup = new AtomicLong();
+    private static ScheduledFuture<?> pendingDebouncedLookup; // Guarded by debounceLock
+
+    static {
+        SdkLog.setDefaultSink(new LogcatSink());
+        SdkMetrics.registerQueue("callsWaitingForInit", startupGate::pendingCount);
+        SdkMetrics.registerQueue("pendingLookups", SdkCall::pendingCount);
+    }
 
     // Source types for affiliate association tracking
     public enum AffiliateAssociationSource {
@@ -74,249 +118,569 @@ public class InsertAffiliateManager {
         this.context = context;
     }
 
-    // MARK: init with default
-    public static void init(Activity activity, String code){
-        init(activity, code, false, false);
+    /**
+     * The application context, which is what anything running after the call returns should
+     * capture: an Activity captured by background work stays alive, with its whole view tree,
+     * until that work finishes.
+     */
+    static Context appContext(Context context) {
+        Context application = context.getApplicationContext();
+        return application != null ? application : context;
     }
-    
-    // MARK: init with timeout
-    public static void init(Activity activity, String code, long affiliateAttributionActiveTimeSeconds){
-        init(activity, code, false, false, affiliateAttributionActiveTimeSeconds);
+
+    // MARK: init
+    /**
+     * Initializes the SDK: applies the configuration, then loads the device ID, stored state
+     * and pending events on the calling thread.
+     */
+    public static void init(Context context, InsertAffiliateConfig insertAffiliateConfig) {
+        configure(insertAffiliateConfig);
+        startInitWork(context);
+        startupGate.finish();
     }
-    
-    // MARK: init with logging and timeout
-    public static void init(Activity activity, String code, boolean enableVerboseLogging, long affiliateAttributionActiveTimeSeconds){
-        init(activity, code, enableVerboseLogging, false, affiliateAttributionActiveTimeSeconds);
+
+    public static void init(Activity activity, String code) {
+        init((Context) activity, code);
     }
-    
+
+    public static void init(Context context, String code){
+        init(context, new InsertAffiliateConfig.Builder(code).build());
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Activity activity, String code, long affiliateAttributionActiveTimeSeconds) {
+        init((Context) activity, code, affiliateAttributionActiveTimeSeconds);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Context context, String code, long affiliateAttributionActiveTimeSeconds){
+        init(context, code, false, false, affiliateAttributionActiveTimeSeconds, false);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Activity activity, String code, boolean enableVerboseLogging, long affiliateAttributionActiveTimeSeconds) {
+        init((Context) activity, code, enableVerboseLogging, affiliateAttributionActiveTimeSeconds);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Context context, String code, boolean enableVerboseLogging, long affiliateAttributionActiveTimeSeconds){
+        init(context, code, enableVerboseLogging, false, affiliateAttributionActiveTimeSeconds, false);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Activity activity, String code, boolean enableVerboseLogging, boolean enableInsertLinks) {
+        init((Context) activity, code, enableVerboseLogging, enableInsertLinks);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Context context, String code, boolean enableVerboseLogging, boolean enableInsertLinks){
+        init(context, code, enableVerboseLogging, enableInsertLinks, 0, false);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Activity activity, String code, boolean enableVerboseLogging, boolean enableInsertLinks, long affiliateAttributionActiveTimeSeconds) {
+        init((Context) activity, code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Context context, String code, boolean enableVerboseLogging, boolean enableInsertLinks, long affiliateAttributionActiveTimeSeconds){
+        init(context, code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds, false);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void init(Activity activity, String code, boolean enableVerboseLogging, boolean enableInsertLinks, long affiliateAttributionActiveTimeSeconds, boolean preventAffiliateTransferParam) {
+        init((Context) activity, code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds, preventAffiliateTransferParam);
+    }
+
+    /**
+     * @deprecated Use {@link #init(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
     public static void init(
-        Activity activity,
+        Context context,
         String code,
         boolean enableVerboseLogging,
-        boolean enableInsertLinks // When set to true, the SDK will add trigger additional setup for deep links and universal links. If you are using an external provider for deep links, ensure this is set to false.
+        boolean enableInsertLinks,
+        long affiliateAttributionActiveTimeSeconds,
+        boolean preventAffiliateTransferParam
+    ){
+        init(context, buildConfig(code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds, preventAffiliateTransferParam));
+    }
+
+    // MARK: Asynchronous init
+    public static CompletableFuture<Void> initAsync(Context context, String code) {
+        return initAsync(context, new InsertAffiliateConfig.Builder(code).build());
+    }
+
+    /**
+     * Like init, but returns straight away: the device ID, stored state and pending events are
+     * loaded on the SDK I/O executor, so nothing touches the disk or binds a service on the
+     * calling thread. Calls that need the SDK to be ready (trackEvent, setShortCode,
+     * storeExpectedPlayStoreTransaction, offer code and affiliate lookups, deep links) made
+     * before it finishes are queued and replayed in order once it does.
+     * @return A future that completes once initialization has finished (see also {@link #whenReady()})
+     */
+    public static CompletableFuture<Void> initAsync(Context context, InsertAffiliateConfig insertAffiliateConfig) {
+        Context appContext = appContext(context);
+        CompletableFuture<Void> ready = startupGate.begin();
+        configure(insertAffiliateConfig);
+        SdkExecutors.io().execute(() -> runInitWork(appContext));
+        return ready;
+    }
 
+    /**
+     * @deprecated Use {@link #initAsync(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static CompletableFuture<Void> initAsync(
+        Context context,
+        String code,
+        boolean enableVerboseLogging,
+        boolean enableInsertLinks,
+        long affiliateAttributionActiveTimeSeconds,
+        boolean preventAffiliateTransferParam
     ){
-        init(activity, code, enableVerboseLogging, enableInsertLinks, 0);
+        return initAsync(context, buildConfig(code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds, preventAffiliateTransferParam));
     }
-    
-    public static void init(
-        Activity activity,
+
+    // MARK: Deferred init
+    /**
+     * Applies the configuration only, for use from Application.onCreate or an App Startup
+     * Initializer (see {@link InsertAffiliateInitializer}). Nothing else runs until the SDK is
+     * first used: the first queued call, {@link #whenReady()} or an identifier read starts the
+     * initAsync work on the SDK I/O executor, and queued calls are replayed once it finishes.
+     */
+    public static void initDeferred(Context context, InsertAffiliateConfig insertAffiliateConfig) {
+        Context appContext = appContext(context);
+        startupGate.beginDeferred(() -> SdkExecutors.io().execute(() -> runInitWork(appContext)));
+        configure(insertAffiliateConfig);
+    }
+
+    /**
+     * @deprecated Use {@link #initDeferred(Context, InsertAffiliateConfig)} instead
+     */
+    @Deprecated
+    public static void initDeferred(
+        Context context,
         String code,
         boolean enableVerboseLogging,
-        boolean enableInsertLinks, // When set to true, the SDK will add trigger additional setup for deep links and universal links. If you are using an external provider for deep links, ensure this is set to false.
-        long affiliateAttributionActiveTimeSeconds // Time in seconds for affiliate attribution to remain active (0 = no timeout)
+        boolean enableInsertLinks,
+        long affiliateAttributionActiveTimeSeconds,
+        boolean preventAffiliateTransferParam
     ){
-        init(activity, code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds, false);
+        initDeferred(context, buildConfig(code, enableVerboseLogging, enableInsertLinks, affiliateAttributionActiveTimeSeconds, preventAffiliateTransferParam));
     }
 
-    public static void init(
-        Activity activity,
+    private static InsertAffiliateConfig buildConfig(
         String code,
         boolean enableVerboseLogging,
-        boolean enableInsertLinks, // When set to true, the SDK will add trigger additional setup for deep links and universal links. If you are using an external provider for deep links, ensure this is set to false.
-        long affiliateAttributionActiveTimeSeconds, // Time in seconds for affiliate attribution to remain active (0 = no timeout)
-        boolean preventAffiliateTransferParam // When true, prevents new affiliates from overwriting existing attribution
+        boolean enableInsertLinks,
+        long affiliateAttributionActiveTimeSeconds,
+        boolean preventAffiliateTransferParam
     ){
-        verboseLogging = enableVerboseLogging;
-        insertLinks = enableInsertLinks;
-        affiliateAttributionActiveTime = affiliateAttributionActiveTimeSeconds;
-        preventAffiliateTransfer = preventAffiliateTransferParam;
-
-        if (verboseLogging) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Starting SDK initialization...");
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Company code provided: " + (code != null && !code.isEmpty() ? "Yes" : "No"));
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Verbose logging enabled");
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Insert links enabled: " + insertLinks);
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Affiliate attribution timeout: " + (affiliateAttributionActiveTime > 0 ? affiliateAttributionActiveTime + " seconds" : "disabled"));
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Prevent affiliate transfer: " + preventAffiliateTransfer);
+        return new InsertAffiliateConfig.Builder(code)
+                .setVerboseLogging(enableVerboseLogging)
+                .setInsertLinks(enableInsertLinks)
+                .setAffiliateAttributionActiveTimeSeconds(affiliateAttributionActiveTimeSeconds)
+                .setPreventAffiliateTransfer(preventAffiliateTransferParam)
+                .build();
+    }
+
+    private static void runInitWork(Context appContext) {
+        try {
+            startInitWork(appContext);
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Error during SDK initialization: " + e.getMessage());
+        } finally {
+            startupGate.finish();
         }
-        
-        if (companyCode != null || code == null || code.isEmpty()) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] SDK is already initialized with a company code that isn't null.");
+    }
+
+    /**
+     * Returns a future that completes once the SDK has been initialized, by init or initAsync.
+     * After initDeferred, this starts the deferred work.
+     */
+    public static CompletableFuture<Void> whenReady() {
+        return startupGate.ready();
+    }
+
+    // MARK: Configuration
+    /**
+     * Replaces the configuration without re-running init, e.g. to turn on verbose logging or
+     * change the attribution timeout while the app is running. Operations already in progress
+     * finish with the configuration they started with. Install referrer capture only happens at
+     * init, so enabling insert links here does not trigger it.
+     */
+    public static void reconfigure(InsertAffiliateConfig insertAffiliateConfig) {
+        if (insertAffiliateConfig == null) {
+            SdkLog.e("[Insert Affiliate] Cannot reconfigure the SDK with a null configuration.");
+            return;
+        }
+        // Cached lookups are keyed by company code, so nothing else needs to be invalidated
+        config.set(insertAffiliateConfig);
+        SdkLog.setVerbose(insertAffiliateConfig.isVerboseLogging());
+        SdkLog.i("[Insert Affiliate] SDK reconfigured: " + insertAffiliateConfig);
+    }
+
+    /**
+     * The configuration in use; never null (before init, it has no company code).
+     */
+    public static InsertAffiliateConfig getConfig() {
+        return config.get();
+    }
+
+    // In-memory setup only; safe on any thread
+    private static void configure(InsertAffiliateConfig insertAffiliateConfig) {
+        Trace.beginSection("InsertAffiliate.configure");
+        try {
+            applyConfiguration(insertAffiliateConfig != null ? insertAffiliateConfig : InsertAffiliateConfig.UNCONFIGURED);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private static void applyConfiguration(InsertAffiliateConfig insertAffiliateConfig) {
+        SdkLog.setVerbose(insertAffiliateConfig.isVerboseLogging());
+
+        if (SdkLog.isVerbose()) {
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Starting SDK initialization...");
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Company code provided: " + (insertAffiliateConfig.hasCompanyCode() ? "Yes" : "No"));
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Verbose logging enabled");
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Insert links enabled: " + insertAffiliateConfig.isInsertLinksEnabled());
+            long timeout = insertAffiliateConfig.getAffiliateAttributionActiveTimeSeconds();
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Affiliate attribution timeout: " + (timeout > 0 ? timeout + " seconds" : "disabled"));
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Prevent affiliate transfer: " + insertAffiliateConfig.isPreventAffiliateTransfer());
+        }
+
+        InsertAffiliateConfig previous = config.getAndSet(insertAffiliateConfig);
+        if (previous.getCompanyCode() != null || !insertAffiliateConfig.hasCompanyCode()) {
+            SdkLog.i("[Insert Affiliate] SDK is already initialized with a company code that isn't null.");
+        }
+        SdkLog.i("[Insert Affiliate] SDK initialized with company code: " + insertAffiliateConfig.getCompanyCode());
+    }
+
+    // Disk and IPC work of init; each phase is a trace section so it can be found in Perfetto
+    private static void startInitWork(Context context) {
+        Trace.beginSection("InsertAffiliate.deviceId");
+        try {
+            storeAndReturnShortUniqueDeviceId(context); // Saving device UUID
+        } finally {
+            Trace.endSection();
         }
-        companyCode = code;
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] SDK initialized with company code: " + companyCode);
-        storeAndReturnShortUniqueDeviceId(activity); // Saving device UUID
         
-        if (verboseLogging) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] SDK initialization completed");
+        if (SdkLog.isVerbose()) {
+            SdkLog.i("[Insert Affiliate] [VERBOSE] SDK initialization completed");
         }
 
-        // Report SDK initialization for onboarding verification (fire and forget)
-        reportSdkInitIfNeeded(activity);
+        // Deliver any events left queued by a previous session
+        Trace.beginSection("InsertAffiliate.eventOutbox");
+        try {
+            eventOutbox(context).drain();
+        } finally {
+            Trace.endSection();
+        }
+
+        // Deliver any expected transactions left queued by a previous session
+        Trace.beginSection("InsertAffiliate.transactionOutbox");
+        try {
+            expectedTransactions(context).drain();
+        } finally {
+            Trace.endSection();
+        }
+
+        // Report SDK initialization for onboarding verification; sent by a background job once startup is over
+        onboardingTelemetry(context).start();
+        reportSdkInitIfNeeded(context);
 
         // Automatically capture install referrer data if enabled
-        if (insertLinks) {
-            captureInstallReferrer(activity); // Deferred Deep Linking
+        if (config.get().isInsertLinksEnabled()) {
+            Trace.beginSection("InsertAffiliate.installReferrer");
+            try {
+                captureInstallReferrer(context); // Deferred Deep Linking
+            } finally {
+                Trace.endSection();
+            }
         }
     }
 
     /**
      * Reports SDK initialization to the backend for onboarding verification.
      * Only reports once per install to minimize server load.
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      */
-    private static void reportSdkInitIfNeeded(Activity activity) {
-        new Thread(() -> {
-            HttpURLConnection connection = null;
-            try {
-                SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-
-                // Only report once per install
-                boolean alreadyReported = sharedPreferences.getBoolean("sdk_init_reported", false);
-                if (alreadyReported) {
-                    return;
-                }
-
-                if (verboseLogging) {
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Reporting SDK initialization for onboarding verification...");
-                }
-
-                URL url = new URL("https://api.insertaffiliate.com/V1/onboarding/sdk-init");
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setDoOutput(true);
-
-                JSONObject payload = new JSONObject();
-                payload.put("companyId", companyCode);
-
-                byte[] outputBytes = payload.toString().getBytes(StandardCharsets.UTF_8);
-                connection.getOutputStream().write(outputBytes);
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    SharedPreferences.Editor editor = sharedPreferences.edit();
-                    editor.putBoolean("sdk_init_reported", true);
-                    editor.apply();
-                    if (verboseLogging) {
-                        Log.i("InsertAffiliate TAG", "[Insert Affiliate] SDK initialization reported successfully");
-                    }
-                } else if (verboseLogging) {
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] SDK initialization report failed with status: " + responseCode);
-                }
-            } catch (Exception e) {
-                // Silently fail - this is non-critical telemetry
-                if (verboseLogging) {
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] SDK initialization report error: " + e.getMessage());
-                }
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
+    private static void reportSdkInitIfNeeded(Context context) {
+        Context appContext = appContext(context);
+        SdkExecutors.io().execute(() -> {
+            // Only report once per install
+            if (AffiliateStateStore.preferences(appContext).getBoolean("sdk_init_reported", false)) {
+                return;
             }
-        }).start();
+            verboseLog("Queueing SDK initialization report for onboarding verification");
+            String companyCode = config.get().getCompanyCode();
+            onboardingTelemetry(appContext).report(OnboardingTelemetry.SDK_INIT_ID, Payloads.toJson(Payloads.sdkInit(companyCode)));
+        });
     }
 
     /**
      * Reports a new affiliate association to the backend for tracking.
      * Only reports each unique affiliateIdentifier once to prevent duplicates.
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @param affiliateIdentifier The full affiliate identifier (shortCode-deviceId)
      * @param source The source of the association
      */
-    private static void reportAffiliateAssociationIfNeeded(Activity activity, String affiliateIdentifier, AffiliateAssociationSource source) {
-        new Thread(() -> {
-            HttpURLConnection connection = null;
-            try {
-                if (companyCode == null || companyCode.isEmpty()) {
-                    verboseLog("Cannot report affiliate association: no company code available");
-                    return;
-                }
+    private static void reportAffiliateAssociationIfNeeded(Context context, String affiliateIdentifier, AffiliateAssociationSource source) {
+        Context appContext = appContext(context);
+        SdkExecutors.io().execute(() -> {
+            String companyCode = config.get().getCompanyCode();
+            if (companyCode == null || companyCode.isEmpty()) {
+                verboseLog("Cannot report affiliate association: no company code available");
+                return;
+            }
 
-                SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
+            // Check if this affiliate identifier has already been reported
+            if (associationStore(appContext).contains(affiliateIdentifier)) {
+                SdkLog.v("Affiliate association already reported for: {}, skipping", affiliateIdentifier);
+                return;
+            }
 
-                // Get the set of already-reported affiliate identifiers
-                String reportedAssociationsJson = sharedPreferences.getString("reported_affiliate_associations", "[]");
-                java.util.Set<String> reportedAssociations = new java.util.HashSet<>();
-                try {
-                    org.json.JSONArray jsonArray = new org.json.JSONArray(reportedAssociationsJson);
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        reportedAssociations.add(jsonArray.getString(i));
-                    }
-                } catch (Exception e) {
-                    verboseLog("Error parsing reported associations: " + e.getMessage());
-                }
+            SdkLog.v("Queueing affiliate association report: {} (source: {})", affiliateIdentifier, source.getValue());
+            String payload = Payloads.toJson(Payloads.affiliateAssociated(companyCode, affiliateIdentifier,
+                    source.getValue(), java.time.Instant.now().toString()));
+            onboardingTelemetry(appContext).report(OnboardingTelemetry.ASSOCIATION_ID_PREFIX + affiliateIdentifier, payload);
+        });
+    }
 
-                // Check if this affiliate identifier has already been reported
-                if (reportedAssociations.contains(affiliateIdentifier)) {
-                    verboseLog("Affiliate association already reported for: " + affiliateIdentifier + ", skipping");
-                    return;
+    /**
+     * Returns the background job that delivers onboarding reports, creating it on first use.
+     * Reports are marked as sent once the backend accepts them.
+     */
+    private static OnboardingTelemetry onboardingTelemetry(Context context) {
+        OnboardingTelemetry telemetry = onboardingTelemetry;
+        if (telemetry == null) {
+            synchronized (InsertAffiliateManager.class) {
+                telemetry = onboardingTelemetry;
+                if (telemetry == null) {
+                    Context appContext = appContext(context);
+                    SharedPreferences sharedPreferences = AffiliateStateStore.preferences(appContext);
+                    telemetry = new OnboardingTelemetry(new File(appContext.getFilesDir(), "insert_affiliate_onboarding.outbox"),
+                            Api.BASE_URL_INSERT_AFFILIATE, ApiClient::http, new SharedPreferencesStore(sharedPreferences),
+                            SdkExecutors.io(), SdkExecutors.scheduler(), SdkExecutors.disk(), uploadScheduler(appContext), System::currentTimeMillis,
+                            id -> {
+                                if (id.equals(OnboardingTelemetry.SDK_INIT_ID)) {
+                                    sharedPreferences.edit().putBoolean("sdk_init_reported", true).apply();
+                                    verboseLog("SDK initialization reported successfully");
+                                } else if (id.startsWith(OnboardingTelemetry.ASSOCIATION_ID_PREFIX)) {
+                                    String affiliateIdentifier = id.substring(OnboardingTelemetry.ASSOCIATION_ID_PREFIX.length());
+                                    associationStore(appContext).add(affiliateIdentifier);
+                                    SdkLog.v("Affiliate association reported successfully for: {}", affiliateIdentifier);
+                                }
+                            });
+                    onboardingTelemetry = telemetry;
+                    SdkMetrics.registerQueue("onboardingOutbox", telemetry::size);
+                    // Pending reports ride along with any other SDK request that gets through
+                    ApiClient.setOnSuccessfulCall(telemetry::drainIfDue);
                 }
+            }
+        }
+        return telemetry;
+    }
 
-                verboseLog("Reporting new affiliate association: " + affiliateIdentifier + " (source: " + source.getValue() + ")");
-
-                URL url = new URL("https://api.insertaffiliate.com/V1/onboarding/affiliate-associated");
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setDoOutput(true);
-
-                JSONObject payload = new JSONObject();
-                payload.put("companyId", companyCode);
-                payload.put("affiliateIdentifier", affiliateIdentifier);
-                payload.put("source", source.getValue());
-                payload.put("timestamp", java.time.Instant.now().toString());
-
-                byte[] outputBytes = payload.toString().getBytes(StandardCharsets.UTF_8);
-                connection.getOutputStream().write(outputBytes);
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    // Add to reported set and persist
-                    reportedAssociations.add(affiliateIdentifier);
-                    org.json.JSONArray updatedArray = new org.json.JSONArray(reportedAssociations);
-                    SharedPreferences.Editor editor = sharedPreferences.edit();
-                    editor.putString("reported_affiliate_associations", updatedArray.toString());
-                    editor.apply();
-                    verboseLog("Affiliate association reported successfully for: " + affiliateIdentifier);
-                } else {
-                    verboseLog("Affiliate association report failed with status: " + responseCode);
-                }
-            } catch (Exception e) {
-                // Silently fail - this is non-critical telemetry
-                verboseLog("Affiliate association report error: " + e.getMessage());
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
+    /**
+     * Returns the store of already-reported associations, creating it on first use and
+     * migrating the JSON array kept in SharedPreferences by older SDK versions.
+     */
+    private static AssociationDedupeStore associationStore(Context context) {
+        AssociationDedupeStore store = associationStore;
+        if (store == null) {
+            synchronized (InsertAffiliateManager.class) {
+                store = associationStore;
+                if (store == null) {
+                    File file = new File(appContext(context).getFilesDir(), "insert_affiliate_associations.bin");
+                    store = new AssociationDedupeStore(file, MAX_REPORTED_ASSOCIATIONS, REPORTED_ASSOCIATION_TTL_MILLIS,
+                            SdkExecutors.disk(), System::currentTimeMillis);
+
+                    SharedPreferences sharedPreferences = AffiliateStateStore.preferences(context);
+                    String legacyJson = sharedPreferences.getString("reported_affiliate_associations", null);
+                    if (legacyJson != null) {
+                        try {
+                            JsonArray jsonArray = JsonParser.parseString(legacyJson).getAsJsonArray();
+                            List<String> legacy = new java.util.ArrayList<>(jsonArray.size());
+                            for (JsonElement element : jsonArray) {
+                                legacy.add(element.getAsString());
+                            }
+                            store.addAll(legacy);
+                            SdkLog.v("Migrated {} reported affiliate associations", legacy.size());
+                        } catch (Exception e) {
+                            SdkLog.v("Error parsing reported associations: {}", e.getMessage());
+                        }
+                        sharedPreferences.edit().remove("reported_affiliate_associations").apply();
+                    }
+                    associationStore = store;
                 }
             }
-        }).start();
+        }
+        return store;
+    }
+
+    // MARK: Logging
+    /**
+     * Sends SDK logs to the host app's logger instead of Logcat.
+     * Pass SdkLog.NO_OP to silence the SDK entirely, or null to go back to Logcat.
+     * @param sink The sink that receives every SDK log line
+     */
+    public static void setLogSink(SdkLog.Sink sink) {
+        SdkLog.setSink(sink);
+    }
+
+    // MARK: Threading
+    /**
+     * Routes all SDK network work through the given executor instead of the SDK's own pool.
+     * Useful when the host app already manages a shared I/O pool.
+     * @param executor The executor to use, or null to go back to the SDK's own pool
+     */
+    public static void setNetworkExecutor(Executor executor) {
+        SdkExecutors.setHostExecutor(executor);
+        SdkLog.v("Network executor {}", executor != null ? "set by host app" : "reset to SDK default");
+    }
+
+    /**
+     * Sets the maximum number of threads the SDK's own network pool may use (default 2).
+     * Has no effect while a host executor is set via setNetworkExecutor.
+     * @param parallelism The maximum number of concurrent SDK network threads (at least 1)
+     */
+    public static void setNetworkParallelism(int parallelism) {
+        SdkExecutors.setIoParallelism(parallelism);
+        SdkLog.v("Network parallelism set to: {}", parallelism);
+    }
+
+    /**
+     * Sets the default timeouts for all SDK network calls (defaults: 10s connect, 15s read, 30s overall).
+     * Individual lookups can set a shorter deadline with CallOptions.
+     * @param connectTimeoutMillis Maximum time to establish a connection
+     * @param readTimeoutMillis Maximum time between bytes while sending or receiving
+     * @param callTimeoutMillis Maximum time for a whole call, including retries and redirects (0 = none)
+     */
+    public static void setNetworkTimeouts(long connectTimeoutMillis, long readTimeoutMillis, long callTimeoutMillis) {
+        ApiClient.setTimeouts(connectTimeoutMillis, readTimeoutMillis, callTimeoutMillis);
+        SdkLog.v("Network timeouts set to connect: {}ms, read: {}ms, call: {}ms", connectTimeoutMillis, readTimeoutMillis, callTimeoutMillis);
+    }
+
+    /**
+     * Number of SDK calls that timed out since the process started (or the last resetMetrics):
+     * network timeouts plus lookups whose CallOptions deadline passed.
+     */
+    public static long getTimedOutCallCount() {
+        return SdkMetrics.snapshot().totalTimeouts();
+    }
+
+    // MARK: Metrics
+    /**
+     * Per-endpoint request counts, outcomes and latency histograms, plus current queue depths.
+     */
+    public static SdkMetrics.Snapshot getMetrics() {
+        return SdkMetrics.snapshot();
+    }
+
+    /**
+     * Sets a listener told about every SDK request as it finishes, e.g. to forward to your own
+     * telemetry; null removes it.
+     */
+    public static void setMetricsListener(SdkMetrics.Listener listener) {
+        SdkMetrics.setListener(listener);
+    }
+
+    public static void resetMetrics() {
+        SdkMetrics.reset();
     }
 
     public static String getCompanyCode() {
-        return companyCode;
+        return config.get().getCompanyCode();
     }
 
+    /**
+     * Clears the configuration and cancels all pending SDK calls. Queued events stay in the
+     * outbox and are delivered after the next init.
+     */
     public static void reset() {
-        companyCode = null;
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] SDK has been reset.");
+        config.set(InsertAffiliateConfig.UNCONFIGURED);
+        SdkLog.setVerbose(false);
+        startupGate.reset();
+        cancelPendingCalls();
+        SdkLog.i("[Insert Affiliate] SDK has been reset.");
+    }
+
+    /**
+     * Cancels every pending SDK lookup and network request, e.g. when the screen or process
+     * scope that started them ends. Cancelled lookups never invoke their callbacks.
+     */
+    public static void cancelPendingCalls() {
+        synchronized (debounceLock) {
+            latestDebouncedLookup.incrementAndGet();
+            if (pendingDebouncedLookup != null) {
+                pendingDebouncedLookup.cancel(false);
+                pendingDebouncedLookup = null;
+            }
+        }
+        SdkCall.cancelAll();
+        ApiClient.cancelAll();
+        verboseLog("Cancelled all pending SDK calls");
+    }
+
+    public static void setInsertAffiliateIdentifierChangeCallback(Activity activity, InsertAffiliateIdentifierChangeCallback callback) {
+        setInsertAffiliateIdentifierChangeCallback((Context) activity, callback);
     }
 
     /**
      * Sets a callback to be notified whenever the affiliate identifier changes.
      * The callback is also immediately invoked with current values if an affiliate exists.
-     * @param activity The activity context (required to check existing affiliate)
+     * @param context Any context (required to check existing affiliate)
      * @param callback The callback to be invoked when the identifier changes
      */
-    public static void setInsertAffiliateIdentifierChangeCallback(Activity activity, InsertAffiliateIdentifierChangeCallback callback) {
+    public static void setInsertAffiliateIdentifierChangeCallback(Context context, InsertAffiliateIdentifierChangeCallback callback) {
         identifierChangeCallback = callback;
-        if (verboseLogging) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Affiliate identifier change callback " +
+        if (SdkLog.isVerbose()) {
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Affiliate identifier change callback " +
                   (callback != null ? "set" : "removed"));
         }
 
         // Fire callback immediately with existing values if affiliate exists
-        if (callback != null && activity != null) {
-            String existingIdentifier = returnInsertAffiliateIdentifier(activity, true); // Use ignoreTimeout to get raw identifier
+        if (callback != null && context != null) {
+            String existingIdentifier = returnInsertAffiliateIdentifier(context, true); // Use ignoreTimeout to get raw identifier
             if (existingIdentifier != null && !existingIdentifier.isEmpty()) {
-                String existingOfferCode = getStoredOfferCode(activity);
-                verboseLog("Firing callback immediately with existing affiliate: " + existingIdentifier + ", offerCode: " + existingOfferCode);
+                String existingOfferCode = getStoredOfferCode(context);
+                SdkLog.v("Firing callback immediately with existing affiliate: {}, offerCode: {}", existingIdentifier, existingOfferCode);
                 callbackExecutor.execute(() -> {
                     try {
                         callback.onIdentifierChanged(existingIdentifier, existingOfferCode);
                     } catch (Exception e) {
-                        Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error in immediate callback invocation: " + e.getMessage());
+                        SdkLog.e("[Insert Affiliate] Error in immediate callback invocation: " + e.getMessage());
                     }
                 });
             }
@@ -331,8 +695,8 @@ public class InsertAffiliateManager {
     @Deprecated
     public static void setInsertAffiliateIdentifierChangeCallback(InsertAffiliateIdentifierChangeCallback callback) {
         identifierChangeCallback = callback;
-        if (verboseLogging) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] Affiliate identifier change callback " +
+        if (SdkLog.isVerbose()) {
+            SdkLog.i("[Insert Affiliate] [VERBOSE] Affiliate identifier change callback " +
                   (callback != null ? "set" : "removed"));
         }
     }
@@ -340,52 +704,51 @@ public class InsertAffiliateManager {
     // MARK: Short Codes
     public static boolean isShortCode(String link) {
         // Check if the link is between 3 and 25 characters long and contains only letters and numbers
-        String regex = "^[a-zA-Z0-9]{3,25}$";
-        return link != null && link.matches(regex);
+        return ShortCodes.isShortCode(link);
+    }
+
+    public static void setShortCode(Activity activity, String shortCode, ShortCodeValidationCallback callback) {
+        setShortCode((Context) activity, shortCode, callback);
     }
 
     /**
      * Validates a short code against the API and stores it if valid
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @param shortCode The short code to validate and set
      * @param callback Callback that receives validation result (true if valid, false if invalid)
      */
-    public static void setShortCode(Activity activity, String shortCode, ShortCodeValidationCallback callback) {
+    public static void setShortCode(Context context, String shortCode, ShortCodeValidationCallback callback) {
         if (shortCode == null || shortCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error: Short code cannot be null or empty.");
-            if (callback != null) callback.onValidationComplete(false);
-            return;
-        }
-
-        // Convert short code to uppercase
-        String capitalisedShortCode = shortCode.toUpperCase();
-
-        // Ensure the short code is between 3 and 25 characters
-        if (capitalisedShortCode.length() < 3 || capitalisedShortCode.length() > 25) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error: Short code must be between 3 and 25 characters long.");
+            SdkLog.e("[Insert Affiliate] Error: Short code cannot be null or empty.");
             if (callback != null) callback.onValidationComplete(false);
             return;
         }
 
-        // Ensure the short code contains only letters and numbers
-        if (!capitalisedShortCode.matches("^[a-zA-Z0-9]+$")) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error: Short code must contain only letters and numbers.");
+        // Validate (3-25 letters and numbers) and convert to uppercase
+        String capitalisedShortCode = ShortCodes.normalize(shortCode);
+        if (capitalisedShortCode == null) {
+            if (shortCode.length() < ShortCodes.MIN_LENGTH || shortCode.length() > ShortCodes.MAX_LENGTH) {
+                SdkLog.e("[Insert Affiliate] Error: Short code must be between 3 and 25 characters long.");
+            } else {
+                SdkLog.e("[Insert Affiliate] Error: Short code must contain only letters and numbers.");
+            }
             if (callback != null) callback.onValidationComplete(false);
             return;
         }
 
         // Validate against API
+        Context appContext = appContext(context);
         getAffiliateDetails(capitalisedShortCode, true, new AffiliateDetailsCallback() {
             @Override
             public void onAffiliateDetailsReceived(AffiliateDetails details) {
                 if (details != null) {
                     // Valid short code, store it
-                    storeInsertAffiliateReferringLink(activity, capitalisedShortCode, AffiliateAssociationSource.SHORT_CODE_MANUAL);
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Short code " + capitalisedShortCode + " validated and stored successfully.");
+                    storeInsertAffiliateReferringLink(appContext, capitalisedShortCode, AffiliateAssociationSource.SHORT_CODE_MANUAL);
+                    SdkLog.i("[Insert Affiliate] Short code " + capitalisedShortCode + " validated and stored successfully.");
                     if (callback != null) callback.onValidationComplete(true);
                 } else {
                     // Invalid short code
-                    Log.e("InsertAffiliate TAG", "[Insert Affiliate] Short code " + capitalisedShortCode + " does not exist. Not storing.");
+                    SdkLog.e("[Insert Affiliate] Short code " + capitalisedShortCode + " does not exist. Not storing.");
                     if (callback != null) callback.onValidationComplete(false);
                 }
             }
@@ -404,20 +767,44 @@ public class InsertAffiliateManager {
         return sb.toString();
     }
 
-    private static String returnShortUniqueDeviceId(Activity activity) {
-        SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-        return sharedPreferences.getString("shortUniqueDeviceID", null);
+    /**
+     * The state for a public read. While an async or deferred init is running, the disk and
+     * ANDROID_ID work stays on the init thread: the main thread gets whatever init has loaded
+     * so far (possibly nothing yet), and other threads wait up to READ_WAIT_MILLIS for init
+     * to finish.
+     */
+    private static AffiliateState readState(Context context) {
+        if (startupGate.isInitializing()) {
+            startupGate.startDeferred();
+            if (Looper.getMainLooper().isCurrentThread()) {
+                verboseLog("SDK initialization still running, returning the state loaded so far");
+                return AffiliateStateStore.peek();
+            }
+            try {
+                startupGate.ready().get(READ_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return AffiliateStateStore.peek();
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] SDK initialization did not finish in time, returning the state loaded so far");
+                return AffiliateStateStore.peek();
+            }
+        }
+        return AffiliateStateStore.get(context);
     }
 
-    private static String storeAndReturnShortUniqueDeviceId(Activity activity) {
+    private static String returnShortUniqueDeviceId(Context context) {
+        return AffiliateStateStore.get(context).deviceId;
+    }
+
+    private static String storeAndReturnShortUniqueDeviceId(Context context) {
         verboseLog("Getting or generating user ID...");
-        SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-        String savedAndroidId = sharedPreferences.getString("shortUniqueDeviceID", null);
+        String savedAndroidId = AffiliateStateStore.get(context).deviceId;
 
         if (savedAndroidId == null) {
             verboseLog("No existing user ID found, generating new one...");
             // Get ANDROID_ID
-            String androidId = Settings.Secure.getString(activity.getContentResolver(), Settings.Secure.ANDROID_ID);
+            String androidId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
 
             // If ANDROID_ID is null, generate a random string
             if (androidId == null) {
@@ -425,107 +812,124 @@ public class InsertAffiliateManager {
             }
 
             // Save trimmed or original ID
-            SharedPreferences.Editor editor = sharedPreferences.edit();
             String shortUniqueId = androidId.length() > 6 ? androidId.substring(0, 6) : androidId;
-            editor.putString("shortUniqueDeviceID", shortUniqueId);
-            editor.apply();
-            verboseLog("Generated and saved new user ID: " + shortUniqueId);
-        } else {
-            verboseLog("Found existing user ID: " + savedAndroidId);
+            AffiliateStateStore.setDeviceId(context, shortUniqueId);
+            SdkLog.v("Generated and saved new user ID: {}", shortUniqueId);
+            return shortUniqueId;
         }
 
-        return sharedPreferences.getString("shortUniqueDeviceID", null);
+        SdkLog.v("Found existing user ID: {}", savedAndroidId);
+        return savedAndroidId;
     }
 
     public static String getUniqueId(Activity activity) {
-        SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-        return sharedPreferences.getString("shortUniqueDeviceID", null);
+        return getUniqueId((Context) activity);
+    }
+
+    public static String getUniqueId(Context context) {
+        return readState(context).deviceId;
     }
 
     public static void storeExpectedPlayStoreTransaction(Activity activity, String purchaseToken) {
-        verboseLog("Storing expected store transaction with token: " + purchaseToken);
+        storeExpectedPlayStoreTransaction((Context) activity, purchaseToken);
+    }
+
+    /**
+     * Tells the backend to expect a Play Store purchase, so the affiliate is credited when the
+     * Play webhook arrives. The transaction is persisted on the device and retried until it is
+     * delivered; calling this again with the same purchase token does nothing.
+     * Follow delivery with setTransactionDeliveryListener.
+     * @param context Any context; only its application context is kept
+     * @param purchaseToken The purchase token from Google Play Billing
+     */
+    public static void storeExpectedPlayStoreTransaction(Context context, String purchaseToken) {
+        if (startupGate.deferIfInitializing("storeExpectedPlayStoreTransaction", () -> storeExpectedPlayStoreTransaction(context, purchaseToken))) {
+            return;
+        }
+        SdkLog.v("Storing expected store transaction with token: {}", purchaseToken);
+
+        if (purchaseToken == null || purchaseToken.isEmpty()) {
+            SdkLog.e("[Insert Affiliate] Cannot store expected transaction: the purchase token is empty.");
+            return;
+        }
         
         String companyCode = getCompanyCode();
         if (companyCode == null || companyCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Company code is not set. Please initialise the SDK with a valid company code.");
+            SdkLog.e("[Insert Affiliate] Company code is not set. Please initialise the SDK with a valid company code.");
             verboseLog("Cannot store transaction: no company code available");
             return;
         }
     
-        String shortCode = returnInsertAffiliateIdentifier(activity);
+        String shortCode = returnInsertAffiliateIdentifier(context);
         if (shortCode == null || shortCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] No affiliate identifier found. Please set one before tracking events.");
+            SdkLog.e("[Insert Affiliate] No affiliate identifier found. Please set one before tracking events.");
             verboseLog("Cannot store transaction: no affiliate identifier available");
             return;
         }
         
-        verboseLog("Company code: " + companyCode + ", Short code: " + shortCode);
+        SdkLog.v("Company code: {}, Short code: {}", companyCode, shortCode);
     
         // Build JSON payload
-        JSONObject payload = new JSONObject();
-        try {
-            payload.put("UUID", purchaseToken);
-            payload.put("companyCode", companyCode);
-            payload.put("shortCode", shortCode);
-            payload.put("storedDate", java.time.Instant.now().toString());  // ISO8601 date
-        } catch (Exception e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed to build JSON payload: " + e.getMessage());
-            return;
-        }
+        String payload = Payloads.expectedTransaction(purchaseToken, companyCode, shortCode, java.time.Instant.now().toString());  // ISO8601 date
         
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Storing expected transaction: " + payload);
-        verboseLog("Making API call to store expected transaction...");
+        SdkLog.i("[Insert Affiliate] Storing expected transaction: " + payload);
 
-        String apiUrl = "https://api.insertaffiliate.com/v1/api/app-store-webhook/create-expected-transaction";
+        // Written to the on-device outbox first so the transaction survives network failures and process death
+        expectedTransactions(context).store(purchaseToken, payload);
+    }
 
-        // Networking done on background thread
-        new Thread(() -> {
-            HttpURLConnection connection = null;
-            try {
-                URL url = new URL(apiUrl);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setDoOutput(true);
-    
-                // Write JSON payload
-                byte[] outputBytes = payload.toString().getBytes(StandardCharsets.UTF_8);
-                connection.getOutputStream().write(outputBytes);
-    
-                int responseCode = connection.getResponseCode();
-                verboseLog("API response status: " + responseCode);
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Expected transaction stored successfully.");
-                    verboseLog("Expected transaction stored successfully on server");
-                } else {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed to store expected transaction with status code: " + responseCode + ". Response: " + response);
-                    verboseLog("API error response: " + response);
-                }
-            } catch (Exception e) {
-                Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error storing expected transaction: " + e.getMessage());
-                verboseLog("Network error storing transaction: " + e.getMessage());
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
+    /**
+     * Sets a listener told about every delivery state change of expected Play Store
+     * transactions, on a background thread. Pass null to remove it.
+     */
+    public static void setTransactionDeliveryListener(TransactionDeliveryListener listener) {
+        transactionDeliveryListener = listener;
+        ExpectedTransactions transactions = expectedTransactions;
+        if (transactions != null) {
+            transactions.setListener(listener);
+        }
+    }
+
+    /**
+     * Returns the durable pipeline that storeExpectedPlayStoreTransaction writes to, creating
+     * it on first use.
+     */
+    private static ExpectedTransactions expectedTransactions(Context context) {
+        ExpectedTransactions transactions = expectedTransactions;
+        if (transactions == null) {
+            synchronized (InsertAffiliateManager.class) {
+                transactions = expectedTransactions;
+                if (transactions == null) {
+                    transactions = new ExpectedTransactions(appContext(context).getFilesDir(),
+                            Api.BASE_URL_INSERT_AFFILIATE + "v1/api/app-store-webhook/create-expected-transaction",
+                            ApiClient::http, SdkExecutors.io(), SdkExecutors.scheduler(), SdkExecutors.disk(),
+                            System::currentTimeMillis);
+                    transactions.setListener(transactionDeliveryListener);
+                    transactions.setUploadScheduler(uploadScheduler(context));
+                    expectedTransactions = transactions;
+                    SdkMetrics.registerQueue("transactionOutbox", transactions::size);
                 }
             }
-        }).start();
+        }
+        return transactions;
     }
 
     // MARK: Setting Insert Affiliate Link
     public static void setInsertAffiliateIdentifier(Activity activity, String referringLink) {
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Setting affiliate identifier.");
-        verboseLog("Input referringLink: " + referringLink);
+        setInsertAffiliateIdentifier((Context) activity, referringLink);
+    }
+
+    public static void setInsertAffiliateIdentifier(Context context, String referringLink) {
+        if (startupGate.deferIfInitializing("setInsertAffiliateIdentifier", () -> setInsertAffiliateIdentifier(context, referringLink))) {
+            return;
+        }
+        SdkLog.i("[Insert Affiliate] Setting affiliate identifier.");
+        SdkLog.v("Input referringLink: {}", referringLink);
         
         // Check if the companyCode is set
+        String companyCode = config.get().getCompanyCode();
         if (companyCode == null || companyCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Company code is not set. Please initialize the SDK with a valid company code.");
+            SdkLog.e("[Insert Affiliate] Company code is not set. Please initialize the SDK with a valid company code.");
             verboseLog("Company code missing, cannot proceed with API call");
             return;
         }
@@ -533,9 +937,9 @@ public class InsertAffiliateManager {
         verboseLog("Checking if referring link is already a short code...");
         // Check if the link is already a short code
         if (isShortCode(referringLink)) {
-            Log.i("InsertAffiliate TAG","[Insert Affiliate] Referring link is already a short code.");
+            SdkLog.i("[Insert Affiliate] Referring link is already a short code.");
             verboseLog("Link is already a short code, storing directly");
-            storeInsertAffiliateReferringLink(activity, referringLink, AffiliateAssociationSource.REFERRING_LINK);
+            storeInsertAffiliateReferringLink(context, referringLink, AffiliateAssociationSource.REFERRING_LINK);
             return;
         }
         
@@ -547,324 +951,471 @@ public class InsertAffiliateManager {
         try {
             encodedAffiliateLink = URLEncoder.encode(referringLink, StandardCharsets.UTF_8.toString());
         } catch (Exception e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed to encode referring link: " + e.getMessage());
-            verboseLog("Error encoding referring link: " + e.getMessage());
-            storeInsertAffiliateReferringLink(activity, referringLink, AffiliateAssociationSource.REFERRING_LINK);
+            SdkLog.e("[Insert Affiliate] Failed to encode referring link: " + e.getMessage());
+            SdkLog.v("Error encoding referring link: {}", e.getMessage());
+            storeInsertAffiliateReferringLink(context, referringLink, AffiliateAssociationSource.REFERRING_LINK);
             return;
         }
 
-        String urlString = "https://api.insertaffiliate.com/V1/convert-deep-link-to-short-link?companyId="
+        String urlString = Api.BASE_URL_INSERT_AFFILIATE + "V1/convert-deep-link-to-short-link?companyId="
             + companyCode 
             + "&deepLinkUrl=" 
             + encodedAffiliateLink;
 
         verboseLog("Making API request to convert deep link to short code...");
         
-        try {
-            URL url = new URL(urlString);
-            // Perform the GET request in a new thread
-            new Thread(() -> {
-                HttpURLConnection connection = null;
-                try {
-                    connection = (HttpURLConnection) url.openConnection();
-                    connection.setRequestMethod("GET");
-                    connection.setRequestProperty("Content-Type", "application/json");
-    
-                    int responseCode = connection.getResponseCode();
+        HttpUrl url = HttpUrl.parse(urlString);
+        if (url != null) {
+            // Perform the GET request on the SDK I/O executor
+            Context appContext = appContext(context);
+            SdkExecutors.io().execute(() -> {
+                Request request = new Request.Builder()
+                        .url(url)
+                        .header("Content-Type", "application/json")
+                        .get()
+                        .build();
+
+                try (Response response = ApiClient.http().newCall(request).execute()) {
+                    int responseCode = response.code();
                     if (responseCode == HttpURLConnection.HTTP_OK) {
-                        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                        StringBuilder response = new StringBuilder();
-                        String inputLine;
-    
-                        while ((inputLine = in.readLine()) != null) {
-                            response.append(inputLine);
-                        }
-                        in.close();
-    
-                        JSONObject jsonResponse = new JSONObject(response.toString());
-                        String shortLink = jsonResponse.optString("shortLink");
-    
+                        String shortLink = JsonResponses.shortLink(response.body().charStream());
+
                         if (!shortLink.isEmpty()) {
-                            Log.i("InsertAffiliate TAG", "[Insert Affiliate] Short link received: " + shortLink);
-                            storeInsertAffiliateReferringLink(activity, shortLink, AffiliateAssociationSource.REFERRING_LINK);
+                            SdkLog.i("[Insert Affiliate] Short link received: " + shortLink);
+                            storeInsertAffiliateReferringLink(appContext, shortLink, AffiliateAssociationSource.REFERRING_LINK);
                         } else {
-                            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Unexpected JSON format");
-                            storeInsertAffiliateReferringLink(activity, referringLink, AffiliateAssociationSource.REFERRING_LINK);
+                            SdkLog.e("[Insert Affiliate] Unexpected JSON format");
+                            storeInsertAffiliateReferringLink(appContext, referringLink, AffiliateAssociationSource.REFERRING_LINK);
                         }
                     } else {
-                        Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed with HTTP code: " + responseCode);
-                        storeInsertAffiliateReferringLink(activity, referringLink, AffiliateAssociationSource.REFERRING_LINK);
+                        SdkLog.e("[Insert Affiliate] Failed with HTTP code: " + responseCode);
+                        storeInsertAffiliateReferringLink(appContext, referringLink, AffiliateAssociationSource.REFERRING_LINK);
                     }
                 } catch (Exception e) {
-                    Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error: " + e.getMessage());
-                    storeInsertAffiliateReferringLink(activity, referringLink, AffiliateAssociationSource.REFERRING_LINK);
-                } finally {
-                    if (connection != null) {
-                        connection.disconnect();
-                    }
+                    SdkLog.e("[Insert Affiliate] Error: " + e.getMessage());
+                    storeInsertAffiliateReferringLink(appContext, referringLink, AffiliateAssociationSource.REFERRING_LINK);
                 }
-            }).start();
-        } catch (MalformedURLException e) {
-            Log.e("InsertAffiliate TAG", "Invalid URL: " + urlString);
-            storeInsertAffiliateReferringLink(activity, referringLink, AffiliateAssociationSource.REFERRING_LINK);
+            });
+        } else {
+            SdkLog.e("Invalid URL: " + urlString);
+            storeInsertAffiliateReferringLink(context, referringLink, AffiliateAssociationSource.REFERRING_LINK);
         }
 
         // Log success
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Referring link saved successfully: " + referringLink);
+        SdkLog.i("[Insert Affiliate] Referring link saved successfully: " + referringLink);
     }
 
-    private static void storeInsertAffiliateReferringLink(Activity activity, String referringLink, AffiliateAssociationSource source) {
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Storing affiliate identifier: " + referringLink + " (source: " + source.getValue() + ")");
-
-        SharedPreferences sharedPreferences
-                = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE
-        );
+    private static void storeInsertAffiliateReferringLink(Context context, String referringLink, AffiliateAssociationSource source) {
+        SdkLog.i("[Insert Affiliate] Storing affiliate identifier: " + referringLink + " (source: " + source.getValue() + ")");
 
         // Check if this is a new or different affiliate identifier
-        String existingLink = sharedPreferences.getString("referring_link", null);
+        String existingLink = AffiliateStateStore.get(context).referringLink;
         boolean isNewOrDifferent = existingLink == null || !existingLink.equals(referringLink);
 
         if (!isNewOrDifferent) {
-            verboseLog("Link " + referringLink + " is already stored, skipping duplicate storage");
+            SdkLog.v("Link {} is already stored, skipping duplicate storage", referringLink);
             return;
         }
 
         // Check if transfer prevention is enabled and we have an existing affiliate
-        if (preventAffiliateTransfer && existingLink != null && !existingLink.isEmpty()) {
-            verboseLog("Transfer blocked: preventAffiliateTransfer is enabled. Existing affiliate: " + existingLink + ", attempted new affiliate: " + referringLink);
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] Affiliate transfer blocked - existing attribution preserved: " + existingLink);
+        if (config.get().isPreventAffiliateTransfer() && existingLink != null && !existingLink.isEmpty()) {
+            SdkLog.v("Transfer blocked: preventAffiliateTransfer is enabled. Existing affiliate: {}, attempted new affiliate: {}", existingLink, referringLink);
+            SdkLog.i("[Insert Affiliate] Affiliate transfer blocked - existing attribution preserved: " + existingLink);
             // Still notify callback with the existing affiliate (not the new one)
-            notifyIdentifierChange(activity);
+            notifyIdentifierChange(context);
             return;
         }
 
-        SharedPreferences.Editor editor = sharedPreferences
-                .edit();
-        editor.putString("referring_link", referringLink);
-
         // Store the attribution date for new affiliate identifier
         long currentTimeSeconds = System.currentTimeMillis() / 1000;
-        editor.putLong("affiliate_stored_date", currentTimeSeconds);
-        verboseLog("New affiliate identifier stored with fresh attribution date: " + currentTimeSeconds);
-
-        editor.commit();
+        AffiliateStateStore.setReferringLink(context, referringLink, currentTimeSeconds);
+        SdkLog.v("New affiliate identifier stored with fresh attribution date: {}", currentTimeSeconds);
 
         // Note: notifyIdentifierChange is called from retrieveAndStoreOfferCode after offer code is fetched
         // This ensures callback receives both identifier AND offer code together
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Attempting to fetch offer code for stored affiliate identifier...");
-        retrieveAndStoreOfferCode(activity, referringLink);
+        SdkLog.i("[Insert Affiliate] Attempting to fetch offer code for stored affiliate identifier...");
+        retrieveAndStoreOfferCode(context, referringLink);
 
         // Report this new affiliate association to the backend (fire and forget)
-        String fullIdentifier = returnInsertAffiliateIdentifier(activity, true);
+        String fullIdentifier = returnInsertAffiliateIdentifier(context, true);
         if (fullIdentifier != null) {
-            reportAffiliateAssociationIfNeeded(activity, fullIdentifier, source);
+            reportAffiliateAssociationIfNeeded(context, fullIdentifier, source);
         }
     }
 
     public static String returnInsertAffiliateIdentifier(Activity activity) {
-        return returnInsertAffiliateIdentifier(activity, false);
+        return returnInsertAffiliateIdentifier((Context) activity);
+    }
+
+    public static String returnInsertAffiliateIdentifier(Context context) {
+        return returnInsertAffiliateIdentifier(context, false);
     }
     
     public static String returnInsertAffiliateIdentifier(Activity activity, boolean ignoreTimeout) {
-        verboseLog("Getting insert affiliate identifier (ignoreTimeout: " + ignoreTimeout + ")...");
-        SharedPreferences sharedPreferences
-                = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE
-        );
-        String shortUniqueDeviceID = sharedPreferences.getString("shortUniqueDeviceID", "");
-        String referring_link = sharedPreferences.getString("referring_link", "");
-        
-        verboseLog("SharedPreferences - referringLink: " + (referring_link.isEmpty() ? "empty" : referring_link) + ", shortUniqueDeviceID: " + (shortUniqueDeviceID.isEmpty() ? "empty" : shortUniqueDeviceID));
+        return returnInsertAffiliateIdentifier((Context) activity, ignoreTimeout);
+    }
 
-        if (referring_link == null || referring_link.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] No affiliate identifier found. Please set one before tracking events.");
-            verboseLog("No affiliate identifier found in storage");
-            return null;
+    public static String returnInsertAffiliateIdentifier(Context context, boolean ignoreTimeout) {
+        SdkLog.v(ignoreTimeout ? "Getting insert affiliate identifier (ignoreTimeout: true)..." : "Getting insert affiliate identifier (ignoreTimeout: false)...");
+        return readState(context)
+                .resolveIdentifier(ignoreTimeout, System.currentTimeMillis() / 1000, config.get().getAffiliateAttributionActiveTimeSeconds());
+    }
+
+    // MARK: Play Install Referrer
+    /**
+     * Captures install referrer data from Google Play Store, once per install.
+     * Later calls read the stored outcome on a background thread and make no IPC.
+     * @param context Any context; only its application context is kept
+     */
+    private static void captureInstallReferrer(Context context) {
+        verboseLog("Starting install referrer capture...");
+        Context appContext = appContext(context);
+        installReferrerCapture(appContext).capture(rawReferrer -> processInstallReferrerData(appContext, rawReferrer),
+                rawReferrer -> isInstallReferrerHandled(appContext, rawReferrer));
+    }
+
+    /**
+     * Whether a captured referrer has nothing left to store: it names no affiliate, or an
+     * affiliate identifier is already stored (from it, or from a link that came first).
+     */
+    private static boolean isInstallReferrerHandled(Context context, String rawReferrer) {
+        String insertAffiliate = ReferrerParams.parse(rawReferrer).insertAffiliate();
+        return insertAffiliate == null || insertAffiliate.isEmpty() || AffiliateStateStore.get(context).referringLink != null;
+    }
+
+    private static InstallReferrerCapture installReferrerCapture(Context appContext) {
+        InstallReferrerCapture capture = installReferrerCapture;
+        if (capture == null) {
+            synchronized (InsertAffiliateManager.class) {
+                capture = installReferrerCapture;
+                if (capture == null) {
+                    capture = new InstallReferrerCapture(
+                            new SharedPreferencesStore(AffiliateStateStore.preferences(appContext)),
+                            () -> InstallReferrerCapture.playConnection(InstallReferrerClient.newBuilder(appContext).build()),
+                            SdkExecutors.io(),
+                            SdkExecutors.scheduler(),
+                            InstallReferrerCapture.DEFAULT_RETRY_DELAY_MILLIS);
+                    installReferrerCapture = capture;
+                }
+            }
         }
+        return capture;
+    }
+
+    /**
+     * Processes the raw install referrer data and extracts insertAffiliate parameter
+     * @param context Any context; only its application context is kept
+     * @param rawReferrer The raw referrer string from Play Store
+     */
+    private static void processInstallReferrerData(Context context, String rawReferrer) {
+        verboseLog("Processing install referrer data...");
         
-        // Check timeout only if not ignoring timeout and timeout is configured
-        if (!ignoreTimeout && affiliateAttributionActiveTime > 0) {
-            if (!isAffiliateAttributionValid(activity)) {
-                Log.i("InsertAffiliate TAG", "[Insert Affiliate] Affiliate attribution has expired");
-                verboseLog("Affiliate attribution expired, returning null");
-                return null;
+        try {
+            ReferrerParams params = ReferrerParams.parse(rawReferrer);
+            String insertAffiliate = params.insertAffiliate();
+
+            SdkLog.v("Referrer parameters: {}", params);
+            SdkLog.v("Extracted insertAffiliate parameter: {}", insertAffiliate);
+            
+            // If we have insertAffiliate parameter, use it as the affiliate identifier
+            if (insertAffiliate != null && !insertAffiliate.isEmpty()) {
+                SdkLog.v("Found insertAffiliate parameter, setting as affiliate identifier: {}", insertAffiliate);
+                storeInsertAffiliateReferringLink(context, insertAffiliate, AffiliateAssociationSource.INSTALL_REFERRER);
+            } else {
+                verboseLog("No insertAffiliate parameter found in referrer data");
             }
+            
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Error processing install referrer data: " + e.getMessage());
+            SdkLog.v("Error processing referrer data: {}", e.getMessage());
         }
-        
-        String identifier = referring_link + "-" + shortUniqueDeviceID;
-        verboseLog("Found identifier: " + identifier);
-        return identifier;
     }
 
-    // MARK: Play Install Referrer
+    // MARK: Event Tracking
+    public static String trackEvent(Activity activity, String eventName) {
+        return trackEvent((Context) activity, eventName);
+    }
+
     /**
-     * Captures install referrer data from Google Play Store
-     * This method automatically extracts referral parameters and processes them
-     * @param activity The activity context
+     * Tracks an event. The event is queued and delivered in the background; it is written to
+     * disk on a background thread straight away, so this does no file I/O on the calling
+     * thread. Calls made while an async init is still running are queued in memory and
+     * written once it finishes.
+     * Note: the return value is the result of the previous delivery, not of this event;
+     * use trackEventAsync to get this event's result.
+     * @return The result message of the previous delivery, or an error message if the event could not be queued
      */
-    private static void captureInstallReferrer(Activity activity) {
-        verboseLog("Starting install referrer capture...");
+    public static String trackEvent(Context context, String eventName) {
+        if (startupGate.deferIfInitializing("trackEvent", () -> trackEvent(context, eventName))) {
+            return eventUploader.lastResultMessage();
+        }
+        String error = enqueueEvent(context, eventName, null);
+        return error != null ? error : eventUploader.lastResultMessage();
+    }
+
+    public static CompletableFuture<TrackEventResult> trackEventAsync(Activity activity, String eventName) {
+        return trackEventAsync((Context) activity, eventName);
+    }
+
+    /**
+     * Tracks an event and returns a future that completes once this event has been delivered
+     * (including any retries) or has failed for good.
+     * @param context Any context; only its application context is kept
+     * @param eventName The name of the event to track
+     * @return A future with the status code, latency and retry count of this event
+     */
+    public static CompletableFuture<TrackEventResult> trackEventAsync(Context context, String eventName) {
+        CompletableFuture<TrackEventResult> future = new CompletableFuture<>();
+        if (startupGate.deferIfInitializing("trackEventAsync", () -> trackEventAsync(context, eventName).thenAccept(future::complete))) {
+            return future;
+        }
+        long startNanos = System.nanoTime();
+        String error = enqueueEvent(context, eventName, (entry, result) -> {
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            future.complete(new TrackEventResult(result == Outbox.Result.DELIVERED, entry.lastStatusCode, latencyMillis, entry.attempts));
+        });
+        if (error != null) {
+            future.complete(new TrackEventResult(false, 0, 0, 0, error));
+        }
+        return future;
+    }
+
+    /**
+     * Validates and queues an event.
+     * @return null if the event was queued, otherwise the error message
+     */
+    private static String enqueueEvent(Context context, String eventName, Outbox.CompletionListener listener) {
+        SdkLog.v("Tracking event: {}", eventName);
         
-        InstallReferrerClient referrerClient = InstallReferrerClient.newBuilder(activity).build();
-        referrerClient.startConnection(new InstallReferrerStateListener() {
-            @Override
-            public void onInstallReferrerSetupFinished(int responseCode) {
-                switch (responseCode) {
-                    case InstallReferrerClient.InstallReferrerResponse.OK:
-                        verboseLog("Install referrer setup successful");
-                        try {
-                            ReferrerDetails details = referrerClient.getInstallReferrer();
-                            String rawReferrer = details.getInstallReferrer();
-                            
-                            verboseLog("Raw referrer data: " + rawReferrer);
-                            
-                            if (rawReferrer != null && !rawReferrer.isEmpty()) {
-                                processInstallReferrerData(activity, rawReferrer);
-                            } else {
-                                verboseLog("No referrer data found");
+        String companyCode = config.get().getCompanyCode();
+        if (companyCode == null || companyCode.isEmpty()) {
+            SdkLog.e("[Insert Affiliate] Company code is not set. Please initialise the SDK with a valid company code.");
+            verboseLog("Cannot track event: no company code available");
+            return "[Insert Affiliate] Company code is not set. Please initialise the SDK with a valid company code.";
+        }
+        
+        SdkLog.i("track event called with - companyCode: " + companyCode);
+        
+        String deepLinkParam = returnInsertAffiliateIdentifier(context);
+        if (deepLinkParam == null) {
+            SdkLog.i("[Insert Affiliate] No affiliate identifier found. Please set one before tracking events.");
+            verboseLog("Cannot track event: no affiliate identifier available");
+            return "[Insert Affiliate] No affiliate identifier found. Please set one before tracking events by opening a link from an affiliate.";
+        }
+        
+        SdkLog.v("Deep link param: {}", deepLinkParam);
+
+        // URL encode the deepLinkParam if the Android version supports it
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            deepLinkParam = URLEncoder.encode(deepLinkParam, StandardCharsets.UTF_8);
+        }
+
+        String payload = Payloads.trackEvent(eventName, companyCode, deepLinkParam);
+        SdkLog.v("Track event payload: {}", payload);
+        verboseLog("Queueing event for delivery...");
+
+        // Written to the on-device outbox first so the event survives network failures and process death
+        eventOutbox(context).enqueue(payload, listener);
+        return null;
+    }
+
+    /**
+     * Returns the durable outbox that trackEvent writes to, creating it on first use.
+     */
+    private static Outbox eventOutbox(Context context) {
+        Outbox outbox = eventOutbox;
+        if (outbox == null) {
+            synchronized (InsertAffiliateManager.class) {
+                outbox = eventOutbox;
+                if (outbox == null) {
+                    Context appContext = appContext(context);
+                    File file = new File(appContext.getFilesDir(), "insert_affiliate_events.outbox");
+                    outbox = new Outbox("Event", file, MAX_QUEUED_EVENTS, eventUploader,
+                            SdkExecutors.io(), SdkExecutors.scheduler(), SdkExecutors.disk());
+                    UploadScheduler scheduler = uploadScheduler(appContext);
+                    if (eventBatchSize > 0) {
+                        outbox.setBatching(eventUploader, eventBatchSize, eventBatchDelayMillis);
+                        outbox.setUploadScheduler(scheduler, eventBatchDelayMillis);
+                    }
+                    eventOutbox = outbox;
+                    SdkMetrics.registerQueue("eventOutbox", outbox::size);
+
+                    // Flush batched events when the app's UI goes to the background
+                    appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+                        @Override
+                        public void onTrimMemory(int level) {
+                            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                                flushEvents();
                             }
-                        } catch (Exception e) {
-                            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error getting install referrer details: " + e.getMessage());
-                            verboseLog("Error getting referrer details: " + e.getMessage());
                         }
-                        referrerClient.endConnection();
-                        break;
-                        
-                    case InstallReferrerClient.InstallReferrerResponse.FEATURE_NOT_SUPPORTED:
-                        verboseLog("Install referrer feature not supported on this device");
-                        break;
-                        
-                    case InstallReferrerClient.InstallReferrerResponse.SERVICE_UNAVAILABLE:
-                        verboseLog("Install referrer service unavailable");
-                        break;
-                        
-                    default:
-                        verboseLog("Install referrer setup failed with code: " + responseCode);
-                        break;
-                }
-            }
 
-            @Override
-            public void onInstallReferrerServiceDisconnected() {
-                verboseLog("Install referrer service disconnected");
+                        @Override
+                        public void onConfigurationChanged(Configuration newConfig) {
+                        }
+
+                        @Override
+                        public void onLowMemory() {
+                        }
+                    });
+                }
             }
-        });
+        }
+        return outbox;
     }
 
     /**
-     * Processes the raw install referrer data and extracts insertAffiliate parameter
-     * @param activity The activity context
-     * @param rawReferrer The raw referrer string from Play Store
+     * Returns the scheduler for deferrable uploads, creating it on first use. Falls back to an
+     * in-process scheduler, which only enforces the max delay, if WorkManager is unavailable.
      */
-    private static void processInstallReferrerData(Activity activity, String rawReferrer) {
-        verboseLog("Processing install referrer data...");
-        
-        try {
-            // Parse the referrer string directly for insertAffiliate parameter
-            String insertAffiliate = null;
-            
-            // Look for insertAffiliate=value in the raw referrer string
-            if (rawReferrer.contains("insertAffiliate=")) {
-                String[] params = rawReferrer.split("&");
-                for (String param : params) {
-                    if (param.startsWith("insertAffiliate=")) {
-                        insertAffiliate = param.substring("insertAffiliate=".length());
-                        break;
+    private static UploadScheduler uploadScheduler(Context context) {
+        UploadScheduler scheduler = uploadScheduler;
+        if (scheduler == null) {
+            synchronized (InsertAffiliateManager.class) {
+                scheduler = uploadScheduler;
+                if (scheduler == null) {
+                    try {
+                        scheduler = new WorkManagerUploadScheduler(WorkManager.getInstance(appContext(context)));
+                    } catch (IllegalStateException e) {
+                        SdkLog.v("WorkManager unavailable, deferred uploads will wait for their max delay: {}", e.getMessage());
+                        scheduler = new JvmUploadScheduler(SdkExecutors.scheduler(), () -> false, JvmUploadScheduler.DEFAULT_POLL_MILLIS);
                     }
+                    uploadScheduler = scheduler;
                 }
             }
-            
-            verboseLog("Extracted insertAffiliate parameter: " + insertAffiliate);
-            
-            // If we have insertAffiliate parameter, use it as the affiliate identifier
-            if (insertAffiliate != null && !insertAffiliate.isEmpty()) {
-                verboseLog("Found insertAffiliate parameter, setting as affiliate identifier: " + insertAffiliate);
-                storeInsertAffiliateReferringLink(activity, insertAffiliate, AffiliateAssociationSource.INSTALL_REFERRER);
-            } else {
-                verboseLog("No insertAffiliate parameter found in referrer data");
-            }
-            
-        } catch (Exception e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error processing install referrer data: " + e.getMessage());
-            verboseLog("Error processing referrer data: " + e.getMessage());
         }
+        return scheduler;
     }
 
-    // MARK: Event Tracking
-    public static String trackEvent(Activity activity, String eventName) {
-        verboseLog("Tracking event: " + eventName);
-        
-        if (companyCode == null || companyCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Company code is not set. Please initialise the SDK with a valid company code.");
-            verboseLog("Cannot track event: no company code available");
-            return "[Insert Affiliate] Company code is not set. Please initialise the SDK with a valid company code.";
-        }
-        
-        Log.i("InsertAffiliate TAG", "track event called with - companyCode: " + companyCode);
-        
-        String deepLinkParam = returnInsertAffiliateIdentifier(activity);
-        if (deepLinkParam == null) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] No affiliate identifier found. Please set one before tracking events.");
-            verboseLog("Cannot track event: no affiliate identifier available");
-            return "[Insert Affiliate] No affiliate identifier found. Please set one before tracking events by opening a link from an affiliate.";
+    /**
+     * Enables batching for trackEvent: events are held in the outbox and sent together in one
+     * request once maxBatchSize are queued, when the device is on an unmetered network or
+     * charging, maxDelayMillis after the first one was queued, or when the app goes to the
+     * background, whichever comes first.
+     * @param maxBatchSize The number of queued events that triggers an immediate upload
+     * @param maxDelayMillis The longest an event is held before it is uploaded
+     */
+    public static void enableEventBatching(int maxBatchSize, long maxDelayMillis) {
+        eventBatchSize = Math.max(1, maxBatchSize);
+        eventBatchDelayMillis = Math.max(0, maxDelayMillis);
+        Outbox outbox = eventOutbox;
+        if (outbox != null) {
+            outbox.setBatching(eventUploader, eventBatchSize, eventBatchDelayMillis);
+            outbox.setUploadScheduler(uploadScheduler, eventBatchDelayMillis);
         }
-        
-        verboseLog("Deep link param: " + deepLinkParam);
+        SdkLog.v("Event batching enabled (max batch size: {}, max delay: {}ms)", eventBatchSize, eventBatchDelayMillis);
+    }
 
-        JsonObject jsonParams = new JsonObject();
-        jsonParams.addProperty("eventName", eventName);
-        jsonParams.addProperty("companyId", companyCode);
+    /**
+     * Disables trackEvent batching (the default): every event is sent as soon as it is tracked.
+     */
+    public static void disableEventBatching() {
+        eventBatchSize = 0;
+        Outbox outbox = eventOutbox;
+        if (outbox != null) {
+            outbox.flush();
+            outbox.setBatching(null, 1, 0);
+            outbox.setUploadScheduler(null, 0);
+        }
+        verboseLog("Event batching disabled");
+    }
 
-        // URL encode the deepLinkParam if the Android version supports it
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            deepLinkParam = URLEncoder.encode(deepLinkParam, StandardCharsets.UTF_8);
+    /**
+     * Uploads any events held back by batching now.
+     */
+    public static void flushEvents() {
+        Outbox outbox = eventOutbox;
+        if (outbox != null) {
+            outbox.flush();
         }
+    }
 
-        jsonParams.addProperty("deepLinkParam", deepLinkParam);
-        
-        verboseLog("Track event payload: " + jsonParams.toString());
-        verboseLog("Making API call to track event...");
 
-        Retrofit retrofit = new Retrofit.Builder()
-            .baseUrl(Api.BASE_URL_INSERT_AFFILIATE)
-            .addConverterFactory(GsonConverterFactory.create())
-            .client(new OkHttpClient.Builder().build())
-            .build();
+    // MARK: Validation with Iaptic API
+    public String validatePurchaseWithIapticAPI(Activity activity, String appname, String publicKey, String subscriptionId, String purchaseId, String purchaseToken, String receipt, String signature) {
+        return validatePurchaseWithIapticAPI((Context) activity, appname, publicKey, subscriptionId, purchaseId, purchaseToken, receipt, signature);
+    }
+
+    /**
+     * Note: the return value is the result of the previous validation made through this instance,
+     * not of this one; use validatePurchaseWithIapticAPIAsync to get this validation's result.
+     * @return "Success" or "Error" from the previous validation, or null
+     */
+    public String validatePurchaseWithIapticAPI(
+        Context context,
+        String appname,
+        String publicKey,
+        String subscriptionId,
+        String purchaseId,
+        String purchaseToken,
+        String receipt,
+        String signature
+    ) {
+        Call<JsonObject> call = buildIapticValidationCall(context, appname, publicKey, subscriptionId, purchaseId, purchaseToken, receipt, signature);
+        call.enqueue(new Callback<JsonObject>() {
+            public void onResponse(Call<JsonObject> call, retrofit2.Response<JsonObject> response) {
+                SdkLog.i("Receipt Validated Successfully");
+                message = "Success";
+            }
+
+            public void onFailure(Call<JsonObject> call, Throwable t) {
+                SdkLog.i("Error While Validating Receipt");
+                message = "Error";
+            }
+        });
 
-        Api api = retrofit.create(Api.class);
+        return message;
+    }
 
-        Call<JsonObject> call = api.trackevent(jsonParams);
+    public CompletableFuture<ValidationResult> validatePurchaseWithIapticAPIAsync(Activity activity, String appname, String publicKey, String subscriptionId, String purchaseId, String purchaseToken, String receipt, String signature) {
+        return validatePurchaseWithIapticAPIAsync((Context) activity, appname, publicKey, subscriptionId, purchaseId, purchaseToken, receipt, signature);
+    }
 
+    /**
+     * Validates a purchase with the Iaptic API and returns a future for this validation's result.
+     * @return A future with the status code and latency of this validation
+     */
+    public CompletableFuture<ValidationResult> validatePurchaseWithIapticAPIAsync(
+        Context context,
+        String appname,
+        String publicKey,
+        String subscriptionId,
+        String purchaseId,
+        String purchaseToken,
+        String receipt,
+        String signature
+    ) {
+        CompletableFuture<ValidationResult> future = new CompletableFuture<>();
+        long startNanos = System.nanoTime();
+        Call<JsonObject> call = buildIapticValidationCall(context, appname, publicKey, subscriptionId, purchaseId, purchaseToken, receipt, signature);
         call.enqueue(new Callback<JsonObject>() {
-            public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
-                int responseCode = response.code();
-                verboseLog("Track event API response status: " + responseCode);
-                Log.d("InsertAffiliate response: ", "" + response.body());
-
-                if (responseCode == 200) {
-                    responseMessage = "[Insert Affiliate] Track Event Success";
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Event tracked successfully");
-                    verboseLog("Event tracked successfully on server");
+            public void onResponse(Call<JsonObject> call, retrofit2.Response<JsonObject> response) {
+                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                if (response.isSuccessful()) {
+                    SdkLog.i("Receipt Validated Successfully");
+                    future.complete(new ValidationResult(true, response.code(), latencyMillis, "Success"));
                 } else {
-                    responseMessage = "[Insert Affiliate] Failed to track event with status code: " + responseCode;
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Failed to track event with status code: " + responseCode);
-                    verboseLog("Track event API error: status " + responseCode + ", response: " + response.body());
+                    SdkLog.i("Receipt validation failed with status code: " + response.code());
+                    future.complete(new ValidationResult(false, response.code(), latencyMillis, "Error"));
                 }
             }
 
             public void onFailure(Call<JsonObject> call, Throwable t) {
-                Log.i("InsertAffiliate TAG", "Error While Tracking Event");
-                verboseLog("Network error tracking event: " + t.getMessage());
-                responseMessage = "Error";
+                SdkLog.i("Error While Validating Receipt");
+                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                future.complete(new ValidationResult(false, 0, latencyMillis, "Error"));
             }
         });
-
-        return responseMessage;
+        // Cancelling the future also cancels the HTTP call
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
     }
 
-
-    // MARK: Validation with Iaptic API
-    public String validatePurchaseWithIapticAPI(
-        Activity activity,
+    private Call<JsonObject> buildIapticValidationCall(
+        Context context,
         String appname,
         String publicKey,
         String subscriptionId,
@@ -884,170 +1435,185 @@ public class InsertAffiliateManager {
         objTrans.addProperty("signature", signature);
 
         objAddData.addProperty("applicationUsername",
-            returnInsertAffiliateIdentifier(activity));
+            returnInsertAffiliateIdentifier(context));
 
         jsonParams.addProperty("id", subscriptionId);
         jsonParams.addProperty("type", "paid subscription");
         jsonParams.add("transaction", objTrans);
         jsonParams.add("additionalData", objAddData);
 
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(Api.BASE_URL_IAPTIC_VALIDATOR)
-                .client(new OkHttpClient.Builder().build())
-                .addConverterFactory(GsonConverterFactory.create())
-                .addConverterFactory(ScalarsConverterFactory.create())
-                .build();
-
-        Api api = retrofit.create(Api.class);
-
         String yourIapticAuthHeader = appname + ":" + publicKey;
         String baseauth = Base64.encodeToString(yourIapticAuthHeader.getBytes(), Base64.NO_WRAP);
-        Call<JsonObject> call = api.validaterec(jsonParams, "Basic " + baseauth);
-        call.enqueue(new Callback<JsonObject>() {
-            public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
-                Log.i("InsertAffiliate TAG", "Receipt Validated Successfully");
-                message = "Success";
-            }
-
-            public void onFailure(Call<JsonObject> call, Throwable t) {
-                Log.i("InsertAffiliate TAG", "Error While Validating Receipt");
-                message = "Error";
-            }
-        });
-
-        return message;
+        return ApiClient.iaptic().validaterec(jsonParams, "Basic " + baseauth);
     }
 
     // MARK: Offer Codes
     /**
-     * Fetches an offer code from the Insert Affiliate API for the given affiliate link
+     * Fetches an offer code from the Insert Affiliate API for the given affiliate link.
+     * Results are cached per affiliate link (see setOfferCodeCacheTtl) and concurrent requests
+     * for the same link share one network call, so repeat lookups skip the network.
+     * The callback always runs on a background thread after this method has returned, also
+     * when the offer code was cached.
      * @param affiliateLink The affiliate link to fetch the offer code for
      * @param callback Callback that receives the offer code (null if not found or error)
      */
     public static void fetchOfferCode(String affiliateLink, OfferCodeCallback callback) {
+        fetchOfferCode(affiliateLink, CallOptions.DEFAULT, callback);
+    }
+
+    /**
+     * Fetches an offer code with a per-call deadline and/or scope.
+     * @param affiliateLink The affiliate link to fetch the offer code for
+     * @param options Deadline and scope for this call
+     * @param callback Callback that receives the offer code (null if not found, error or timed out); not invoked if the call is cancelled
+     * @return A handle that can cancel the call
+     */
+    public static SdkCall fetchOfferCode(String affiliateLink, CallOptions options, OfferCodeCallback callback) {
+        SdkCall call = SdkCall.start("Offer code", options, (String offerCode) -> callback.onOfferCodeReceived(offerCode));
+        if (!startupGate.deferIfInitializing("fetchOfferCode", () -> lookUpOfferCode(affiliateLink, call))) {
+            lookUpOfferCode(affiliateLink, call);
+        }
+        return call;
+    }
+
+    private static void lookUpOfferCode(String affiliateLink, SdkCall call) {
+        String companyCode = config.get().getCompanyCode();
         if (companyCode == null || companyCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Cannot fetch offer code: no company code available");
-            callback.onOfferCodeReceived(null);
+            SdkLog.e("[Insert Affiliate] Cannot fetch offer code: no company code available");
+            call.complete(null);
             return;
         }
         
         if (affiliateLink == null || affiliateLink.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed to encode affiliate link");
-            callback.onOfferCodeReceived(null);
+            SdkLog.e("[Insert Affiliate] Failed to encode affiliate link");
+            call.complete(null);
             return;
         }
 
+        // Company codes never contain '/', so this key is unique per (company, link)
+        offerCodeCache.get(companyCode + "/" + affiliateLink,
+                key -> requestOfferCode(companyCode, affiliateLink),
+                call::complete);
+    }
+
+    /**
+     * Sets how long fetched offer codes are cached.
+     * After ttlSeconds a cached code is still returned immediately while it is refreshed in the
+     * background. Pass 0 to always go to the network (concurrent requests are still merged).
+     * @param ttlSeconds How long a found offer code is fresh (default 10 minutes)
+     * @param notFoundTtlSeconds How long a "no offer code" answer is remembered (default 1 minute)
+     */
+    public static void setOfferCodeCacheTtl(long ttlSeconds, long notFoundTtlSeconds) {
+        offerCodeCache.setTtl(TimeUnit.SECONDS.toMillis(ttlSeconds), TimeUnit.SECONDS.toMillis(notFoundTtlSeconds), ttlSeconds > 0 ? OFFER_CODE_STALE_MILLIS : 0);
+        SdkLog.v("Offer code cache TTL set to {}s (not found: {}s)", ttlSeconds, notFoundTtlSeconds);
+    }
+
+    /**
+     * Drops all cached offer codes, e.g. after an offer was changed in the dashboard.
+     */
+    public static void clearOfferCodeCache() {
+        offerCodeCache.invalidateAll();
+    }
+
+    // Runs on the cache's loader thread
+    private static SingleFlightCache.Loaded<String> requestOfferCode(String companyCode, String affiliateLink) {
         String encodedAffiliateLink;
         try {
             encodedAffiliateLink = URLEncoder.encode(affiliateLink, StandardCharsets.UTF_8.toString());
         } catch (Exception e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed to encode affiliate link");
-            callback.onOfferCodeReceived(null);
-            return;
+            SdkLog.e("[Insert Affiliate] Failed to encode affiliate link");
+            return SingleFlightCache.Loaded.failed();
         }
 
-        String offerCodeUrlString = "https://api.insertaffiliate.com/v1/affiliateReturnOfferCode/" + companyCode + "/" + encodedAffiliateLink + "?platformType=android";
+        String offerCodeUrlString = Api.BASE_URL_INSERT_AFFILIATE + "v1/affiliateReturnOfferCode/" + companyCode + "/" + encodedAffiliateLink + "?platformType=android";
 
-        try {
-            URL offerCodeUrl = new URL(offerCodeUrlString);
-            
-            new Thread(() -> {
-                HttpURLConnection connection = null;
-                try {
-                    connection = (HttpURLConnection) offerCodeUrl.openConnection();
-                    connection.setRequestMethod("GET");
-                    connection.setRequestProperty("Content-Type", "application/json");
+        HttpUrl offerCodeUrl = HttpUrl.parse(offerCodeUrlString);
+        if (offerCodeUrl == null) {
+            SdkLog.e("[Insert Affiliate] Invalid offer code URL");
+            return SingleFlightCache.Loaded.failed();
+        }
 
-                    int responseCode = connection.getResponseCode();
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                        StringBuilder response = new StringBuilder();
-                        String inputLine;
+        Request request = new Request.Builder()
+                .url(offerCodeUrl)
+                .header("Content-Type", "application/json")
+                .get()
+                .build();
 
-                        while ((inputLine = in.readLine()) != null) {
-                            response.append(inputLine);
-                        }
-                        in.close();
+        try (Response response = ApiClient.http().newCall(request).execute()) {
+            int responseCode = response.code();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                SdkLog.e("[Insert Affiliate] Error fetching offer code: HTTP " + responseCode);
+                return SingleFlightCache.Loaded.failed();
+            }
 
-                        String rawOfferCode = response.toString();
+            String rawOfferCode = response.body().string();
 
-                        // Check for specific error strings from API
-                        if (rawOfferCode.contains("errorofferCodeNotFound") ||
-                            rawOfferCode.contains("errorAffiliateoffercodenotfoundinanycompany") ||
-                            rawOfferCode.contains("errorAffiliateoffercodenotfoundinanycompanyAffiliatelinkwas") ||
-                            rawOfferCode.contains("Routenotfound")) {
-                            Log.i("InsertAffiliate TAG", "[Insert Affiliate] Offer code not found or invalid: " + rawOfferCode);
-                            callback.onOfferCodeReceived(null);
-                        } else {
-                            String cleanedOfferCode = cleanOfferCode(rawOfferCode);
-                            Log.i("InsertAffiliate TAG", "[Insert Affiliate] Successfully fetched and cleaned offer code: " + cleanedOfferCode);
-                            callback.onOfferCodeReceived(cleanedOfferCode);
-                        }
-                    } else {
-                        Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error fetching offer code: HTTP " + responseCode);
-                        callback.onOfferCodeReceived(null);
-                    }
-                } catch (Exception e) {
-                    Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error fetching offer code: " + e.getMessage());
-                    callback.onOfferCodeReceived(null);
-                } finally {
-                    if (connection != null) {
-                        connection.disconnect();
-                    }
-                }
-            }).start();
-        } catch (MalformedURLException e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Invalid offer code URL");
-            callback.onOfferCodeReceived(null);
+            // Check for specific error strings from API
+            if (rawOfferCode.contains("errorofferCodeNotFound") ||
+                rawOfferCode.contains("errorAffiliateoffercodenotfoundinanycompany") ||
+                rawOfferCode.contains("errorAffiliateoffercodenotfoundinanycompanyAffiliatelinkwas") ||
+                rawOfferCode.contains("Routenotfound")) {
+                SdkLog.i("[Insert Affiliate] Offer code not found or invalid: " + rawOfferCode);
+                return SingleFlightCache.Loaded.notFound();
+            }
+
+            String cleanedOfferCode = cleanOfferCode(rawOfferCode);
+            SdkLog.i("[Insert Affiliate] Successfully fetched and cleaned offer code: " + cleanedOfferCode);
+            return cleanedOfferCode.isEmpty() ? SingleFlightCache.Loaded.notFound() : SingleFlightCache.Loaded.found(cleanedOfferCode);
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Error fetching offer code: " + e.getMessage());
+            return SingleFlightCache.Loaded.failed();
         }
     }
 
+    public static void retrieveAndStoreOfferCode(Activity activity, String affiliateLink) {
+        retrieveAndStoreOfferCode((Context) activity, affiliateLink);
+    }
+
     /**
      * Retrieves and stores an offer code for the given affiliate link
      * Also notifies the callback with updated identifier and offer code
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @param affiliateLink The affiliate link to fetch the offer code for
      */
-    public static void retrieveAndStoreOfferCode(Activity activity, String affiliateLink) {
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Attempting to retrieve and store offer code for: " + affiliateLink);
+    public static void retrieveAndStoreOfferCode(Context context, String affiliateLink) {
+        SdkLog.i("[Insert Affiliate] Attempting to retrieve and store offer code for: " + affiliateLink);
 
+        Context appContext = appContext(context);
         fetchOfferCode(affiliateLink, new OfferCodeCallback() {
             @Override
             public void onOfferCodeReceived(String offerCode) {
-                SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-
                 if (offerCode != null && !offerCode.isEmpty()) {
                     // Store the offer code
-                    editor.putString("offer_code", offerCode);
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Successfully stored offer code: " + offerCode);
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] Offer code retrieved and stored successfully");
+                    AffiliateStateStore.setOfferCode(appContext, offerCode);
+                    SdkLog.i("[Insert Affiliate] Successfully stored offer code: " + offerCode);
+                    SdkLog.i("[Insert Affiliate] Offer code retrieved and stored successfully");
                 } else {
-                    Log.i("InsertAffiliate TAG", "[Insert Affiliate] No valid offer code found to store");
+                    SdkLog.i("[Insert Affiliate] No valid offer code found to store");
                     // Clear stored offer code if none found
-                    editor.putString("offer_code", "");
+                    AffiliateStateStore.setOfferCode(appContext, null);
                 }
 
-                editor.apply();
-
                 // Notify callback with both identifier and offer code now that offer code is available
-                notifyIdentifierChange(activity);
+                notifyIdentifierChange(appContext);
             }
         });
     }
     
+    public static String getStoredOfferCode(Activity activity) {
+        return getStoredOfferCode((Context) activity);
+    }
+
     /**
-     * Gets the stored offer code from SharedPreferences
-     * @param activity The activity context
+     * Gets the stored offer code
+     * @param context Any context; only its application context is kept
      * @return The stored offer code, or null if none exists
      */
-    public static String getStoredOfferCode(Activity activity) {
+    public static String getStoredOfferCode(Context context) {
         try {
-            SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-            String offerCode = sharedPreferences.getString("offer_code", null);
-            return (offerCode != null && !offerCode.isEmpty()) ? offerCode : null;
+            return readState(context).offerCode;
         } catch (Exception e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error getting stored offer code: " + e.getMessage());
+            SdkLog.e("[Insert Affiliate] Error getting stored offer code: " + e.getMessage());
             return null;
         }
     }
@@ -1062,7 +1628,7 @@ public class InsertAffiliateManager {
             return "";
         }
         // Remove special characters, keep only alphanumeric, underscores, and dashes
-        return offerCode.replaceAll("[^a-zA-Z0-9_-]", "");
+        return ShortCodes.cleanOfferCode(offerCode);
     }
     
     /**
@@ -1075,33 +1641,37 @@ public class InsertAffiliateManager {
         if (input == null) {
             return "";
         }
-        return input.replaceAll("[^a-zA-Z0-9]", "");
+        return ShortCodes.removeSpecialCharacters(input);
     }
 
     /**
-     * Helper method for verbose logging
+     * Helper method for verbose logging of constant messages. Anything with arguments goes
+     * through a {@link SdkLog#v(String, Object)} template, so nothing is built while verbose
+     * logging is off.
      * @param message The message to log if verbose logging is enabled
      */
-    private static void verboseLog(String message) {
-        if (verboseLogging) {
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] [VERBOSE] " + message);
-        }
+    static void verboseLog(String message) {
+        SdkLog.v(message);
+    }
+
+    public static boolean isAffiliateAttributionValid(Activity activity) {
+        return isAffiliateAttributionValid((Context) activity);
     }
 
     /**
      * Checks if the current affiliate attribution is still valid based on timeout settings
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @return true if attribution is valid, false if expired or no timeout configured
      */
-    public static boolean isAffiliateAttributionValid(Activity activity) {
+    public static boolean isAffiliateAttributionValid(Context context) {
+        long affiliateAttributionActiveTime = config.get().getAffiliateAttributionActiveTimeSeconds();
         // If no timeout is configured, attribution is always valid
         if (affiliateAttributionActiveTime <= 0) {
             verboseLog("No timeout configured, attribution is valid");
             return true;
         }
         
-        SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-        long storedDate = sharedPreferences.getLong("affiliate_stored_date", 0);
+        long storedDate = readState(context).storedDateSeconds;
         
         if (storedDate == 0) {
             verboseLog("No stored date found, attribution is invalid");
@@ -1112,36 +1682,48 @@ public class InsertAffiliateManager {
         long timeDifference = currentTimeSeconds - storedDate;
         
         boolean isValid = timeDifference <= affiliateAttributionActiveTime;
-        verboseLog("Attribution validity check - stored: " + storedDate + ", current: " + currentTimeSeconds + ", difference: " + timeDifference + "s, timeout: " + affiliateAttributionActiveTime + "s, valid: " + isValid);
+        if (SdkLog.isVerbose()) {
+            SdkLog.v(() -> "Attribution validity check - stored: " + storedDate + ", current: " + currentTimeSeconds + ", difference: " + timeDifference + "s, timeout: " + affiliateAttributionActiveTime + "s, valid: " + isValid);
+        }
         
         return isValid;
     }
     
+    public static long getAffiliateStoredDate(Activity activity) {
+        return getAffiliateStoredDate((Context) activity);
+    }
+
     /**
      * Gets the date when the affiliate identifier was stored
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @return The timestamp in seconds since epoch when affiliate was stored, or 0 if not found
      */
-    public static long getAffiliateStoredDate(Activity activity) {
-        SharedPreferences sharedPreferences = activity.getSharedPreferences("InsertAffiliate", Context.MODE_PRIVATE);
-        long storedDate = sharedPreferences.getLong("affiliate_stored_date", 0);
-        verboseLog("Getting affiliate stored date: " + storedDate);
+    public static long getAffiliateStoredDate(Context context) {
+        long storedDate = readState(context).storedDateSeconds;
+        if (SdkLog.isVerbose()) {
+            SdkLog.v("Getting affiliate stored date: {}", storedDate);
+        }
         return storedDate;
     }
 
+    public static Long getAffiliateExpiryTimestamp(Activity activity) {
+        return getAffiliateExpiryTimestamp((Context) activity);
+    }
+
     /**
      * Gets the Unix timestamp (in milliseconds) when the affiliate attribution will expire
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @return The expiry timestamp in milliseconds, or null if no timeout is configured or no affiliate exists
      */
-    public static Long getAffiliateExpiryTimestamp(Activity activity) {
+    public static Long getAffiliateExpiryTimestamp(Context context) {
+        long affiliateAttributionActiveTime = config.get().getAffiliateAttributionActiveTimeSeconds();
         // If no timeout is configured, return null
         if (affiliateAttributionActiveTime <= 0) {
             verboseLog("No timeout configured, returning null for expiry timestamp");
             return null;
         }
 
-        long storedDateSeconds = getAffiliateStoredDate(activity);
+        long storedDateSeconds = getAffiliateStoredDate(context);
         if (storedDateSeconds == 0) {
             verboseLog("No stored date found, returning null for expiry timestamp");
             return null;
@@ -1149,25 +1731,27 @@ public class InsertAffiliateManager {
 
         // Convert stored date to milliseconds and add timeout (also converted to milliseconds)
         long expiryTimestamp = (storedDateSeconds * 1000) + (affiliateAttributionActiveTime * 1000);
-        verboseLog("Calculated expiry timestamp: " + expiryTimestamp + " (storedDate: " + storedDateSeconds + "s, timeout: " + affiliateAttributionActiveTime + "s)");
+        if (SdkLog.isVerbose()) {
+            SdkLog.v("Calculated expiry timestamp: {} (storedDate: {}s, timeout: {}s)", expiryTimestamp, storedDateSeconds, affiliateAttributionActiveTime);
+        }
         return expiryTimestamp;
     }
 
     /**
      * Safely notifies the affiliate identifier change callback with both identifier and offer code
-     * @param activity The activity context to get the current identifier and offer code
+     * @param context The context to get the current identifier and offer code
      */
-    private static void notifyIdentifierChange(Activity activity) {
+    private static void notifyIdentifierChange(Context context) {
         InsertAffiliateIdentifierChangeCallback callback = identifierChangeCallback;
         if (callback != null) {
-            String identifier = returnInsertAffiliateIdentifier(activity);
-            String offerCode = getStoredOfferCode(activity);
+            String identifier = returnInsertAffiliateIdentifier(context);
+            String offerCode = getStoredOfferCode(context);
             callbackExecutor.execute(() -> {
                 try {
                     callback.onIdentifierChanged(identifier, offerCode);
-                    verboseLog("Notified callback of identifier change: " + identifier + ", offerCode: " + offerCode);
+                    SdkLog.v("Notified callback of identifier change: {}, offerCode: {}", identifier, offerCode);
                 } catch (Exception e) {
-                    Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error in identifier change callback: " + e.getMessage());
+                    SdkLog.e("[Insert Affiliate] Error in identifier change callback: " + e.getMessage());
                 }
             });
         }
@@ -1180,25 +1764,32 @@ public class InsertAffiliateManager {
         void onOfferCodeReceived(String offerCode);
     }
 
+    public static void handleInsertLink(Activity activity, Intent intent) {
+        handleInsertLink((Context) activity, intent);
+    }
+
     /**
      * Handles deep links containing insertAffiliate parameter and App Links (https:// URLs)
      * This method should be called from Activity.onCreate() and Activity.onNewIntent()
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @param intent The intent containing the deep link data
      */
-    public static void handleInsertLink(Activity activity, Intent intent) {
+    public static void handleInsertLink(Context context, Intent intent) {
+        if (startupGate.deferIfInitializing("handleInsertLink", () -> handleInsertLink(context, intent))) {
+            return;
+        }
         if (intent == null || intent.getData() == null) {
             verboseLog("No intent or URI data found in handleInsertLink");
             return;
         }
 
         Uri uri = intent.getData();
-        verboseLog("InsertAffiliate: Processing Insert Link URI: " + uri.toString());
+        SdkLog.v("InsertAffiliate: Processing Insert Link URI: {}", uri);
 
         // Handle App Links (https:// URLs from insertaffiliate.link or custom domains)
         String scheme = uri.getScheme();
         if ("https".equals(scheme) || "http".equals(scheme)) {
-            handleAppLink(activity, uri);
+            handleAppLink(context, uri);
             return;
         }
 
@@ -1206,11 +1797,11 @@ public class InsertAffiliateManager {
         String insertAffiliate = uri.getQueryParameter("insertAffiliate");
 
         if (insertAffiliate != null && !insertAffiliate.isEmpty()) {
-            verboseLog("Found insertAffiliate parameter: " + insertAffiliate);
-            Log.i("InsertAffiliate TAG", "[Insert Affiliate] Deep link detected with insertAffiliate parameter: " + insertAffiliate);
+            SdkLog.v("Found insertAffiliate parameter: {}", insertAffiliate);
+            SdkLog.i("[Insert Affiliate] Deep link detected with insertAffiliate parameter: " + insertAffiliate);
 
             // Set the affiliate identifier using the found parameter
-            storeInsertAffiliateReferringLink(activity, insertAffiliate, AffiliateAssociationSource.DEEP_LINK_ANDROID);
+            storeInsertAffiliateReferringLink(context, insertAffiliate, AffiliateAssociationSource.DEEP_LINK_ANDROID);
         } else {
             verboseLog("No insertAffiliate parameter found in deep link");
         }
@@ -1222,10 +1813,10 @@ public class InsertAffiliateManager {
      *   - https://insertaffiliate.link/companyCode/shortCode
      *   - https://insertaffiliate.link/V1/companyCode/shortCode (legacy)
      *   - https://customdomain.com/companyCode/shortCode
-     * @param activity The activity context
+     * @param context Any context; only its application context is kept
      * @param uri The App Link URI
      */
-    private static void handleAppLink(Activity activity, Uri uri) {
+    private static void handleAppLink(Context context, Uri uri) {
         List<String> pathSegments = uri.getPathSegments();
 
         String urlCompanyCode;
@@ -1240,19 +1831,20 @@ public class InsertAffiliateManager {
             urlCompanyCode = pathSegments.get(0);
             shortCode = pathSegments.get(1);
         } else {
-            verboseLog("Invalid App Link format: " + uri.toString());
+            SdkLog.v("Invalid App Link format: {}", uri);
             return;
         }
 
-        verboseLog("App Link detected - Company: " + urlCompanyCode + ", Short code: " + shortCode);
-        Log.i("InsertAffiliate TAG", "[Insert Affiliate] App Link detected - Company: " + urlCompanyCode + ", Short code: " + shortCode);
+        SdkLog.v("App Link detected - Company: {}, Short code: {}", urlCompanyCode, shortCode);
+        SdkLog.i("[Insert Affiliate] App Link detected - Company: " + urlCompanyCode + ", Short code: " + shortCode);
 
         // Validate company code matches initialized one
+        String companyCode = config.get().getCompanyCode();
         if (companyCode != null && !urlCompanyCode.equalsIgnoreCase(companyCode)) {
-            verboseLog("Warning: URL company code (" + urlCompanyCode + ") doesn't match initialized company code (" + companyCode + ")");
+            SdkLog.v("Warning: URL company code ({}) doesn't match initialized company code ({})", urlCompanyCode, companyCode);
         }
 
-        storeInsertAffiliateReferringLink(activity, shortCode.toUpperCase(), AffiliateAssociationSource.APP_LINK);
+        storeInsertAffiliateReferringLink(context, ShortCodes.toUpperAscii(shortCode), AffiliateAssociationSource.APP_LINK);
     }
 
     /**
@@ -1303,6 +1895,107 @@ public class InsertAffiliateManager {
         }
     }
 
+    /**
+     * Delivery state of an expected Play Store transaction.
+     */
+    public enum TransactionDeliveryState {
+        QUEUED,     // Persisted on the device, waiting to be sent
+        RETRYING,   // An attempt failed and will be retried after a backoff
+        DELIVERED,  // Stored by the backend
+        DUPLICATE,  // This purchase token was already queued or delivered; nothing new was queued
+        FAILED      // Rejected by the backend, evicted, or out of retries
+    }
+
+    /**
+     * Listener for setTransactionDeliveryListener.
+     */
+    public interface TransactionDeliveryListener {
+        void onTransactionDeliveryStateChanged(String purchaseToken, TransactionDeliveryState state);
+    }
+
+    /**
+     * Result of a single trackEventAsync call
+     */
+    public static class TrackEventResult {
+        private final boolean success;
+        private final int statusCode;
+        private final long latencyMillis;
+        private final int retryCount;
+        private final String message;
+
+        TrackEventResult(boolean success, int statusCode, long latencyMillis, int retryCount) {
+            this(success, statusCode, latencyMillis, retryCount,
+                    success ? "[Insert Affiliate] Track Event Success"
+                            : statusCode > 0 ? "[Insert Affiliate] Failed to track event with status code: " + statusCode
+                            : "Error");
+        }
+
+        TrackEventResult(boolean success, int statusCode, long latencyMillis, int retryCount, String message) {
+            this.success = success;
+            this.statusCode = statusCode;
+            this.latencyMillis = latencyMillis;
+            this.retryCount = retryCount;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /** HTTP status of the last attempt, or 0 if the event never got a response */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /** Time from trackEventAsync to the final outcome, including queueing and retries */
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        /** Number of failed attempts before the final outcome */
+        public int getRetryCount() {
+            return retryCount;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Result of a single validatePurchaseWithIapticAPIAsync call
+     */
+    public static class ValidationResult {
+        private final boolean success;
+        private final int statusCode;
+        private final long latencyMillis;
+        private final String message;
+
+        ValidationResult(boolean success, int statusCode, long latencyMillis, String message) {
+            this.success = success;
+            this.statusCode = statusCode;
+            this.latencyMillis = latencyMillis;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /** HTTP status of the response, or 0 if the request failed without a response */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
     /**
      * Fetches affiliate details for a given short code without setting it
      * @param shortCode The short code to fetch details for
@@ -1313,108 +2006,155 @@ public class InsertAffiliateManager {
     }
 
     public static void getAffiliateDetails(String shortCode, boolean trackUsage, AffiliateDetailsCallback callback) {
+        getAffiliateDetails(shortCode, trackUsage, CallOptions.DEFAULT, callback);
+    }
+
+    /**
+     * Fetches affiliate details with a per-call deadline and/or scope.
+     * @param shortCode The short code to fetch details for
+     * @param options Deadline and scope for this call
+     * @param callback Callback that receives the affiliate details (null if not found, error or timed out); not invoked if the call is cancelled
+     * @return A handle that can cancel the call
+     */
+    public static SdkCall getAffiliateDetails(String shortCode, CallOptions options, AffiliateDetailsCallback callback) {
+        return getAffiliateDetails(shortCode, false, options, callback);
+    }
+
+    private static SdkCall getAffiliateDetails(String shortCode, boolean trackUsage, CallOptions options, AffiliateDetailsCallback callback) {
+        SdkCall call = SdkCall.start("Affiliate details", options, (AffiliateDetails details) -> callback.onAffiliateDetailsReceived(details));
+        if (!startupGate.deferIfInitializing("getAffiliateDetails", () -> lookUpAffiliateDetails(shortCode, trackUsage, call))) {
+            lookUpAffiliateDetails(shortCode, trackUsage, call);
+        }
+        return call;
+    }
+
+    private static void lookUpAffiliateDetails(String shortCode, boolean trackUsage, SdkCall call) {
+        String companyCode = config.get().getCompanyCode();
         if (companyCode == null || companyCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Cannot get affiliate details: no company code available");
-            callback.onAffiliateDetailsReceived(null);
+            SdkLog.e("[Insert Affiliate] Cannot get affiliate details: no company code available");
+            call.complete(null);
             return;
         }
 
         if (shortCode == null || shortCode.isEmpty()) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Short code cannot be null or empty");
-            callback.onAffiliateDetailsReceived(null);
+            SdkLog.e("[Insert Affiliate] Short code cannot be null or empty");
+            call.complete(null);
             return;
         }
 
-        // Convert short code to uppercase
-        String capitalisedShortCode = shortCode.toUpperCase();
-
-        // Validate short code format
-        if (capitalisedShortCode.length() < 3 || capitalisedShortCode.length() > 25) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Short code must be between 3 and 25 characters long");
-            callback.onAffiliateDetailsReceived(null);
+        // Validate short code format and convert to uppercase
+        String capitalisedShortCode = ShortCodes.normalize(shortCode);
+        if (capitalisedShortCode == null) {
+            if (shortCode.length() < ShortCodes.MIN_LENGTH || shortCode.length() > ShortCodes.MAX_LENGTH) {
+                SdkLog.e("[Insert Affiliate] Short code must be between 3 and 25 characters long");
+            } else {
+                SdkLog.e("[Insert Affiliate] Short code must contain only letters and numbers");
+            }
+            call.complete(null);
             return;
         }
 
-        if (!capitalisedShortCode.matches("^[a-zA-Z0-9]+$")) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Short code must contain only letters and numbers");
-            callback.onAffiliateDetailsReceived(null);
-            return;
+        // Company codes never contain '/', so this key is unique per (company, code)
+        String key = companyCode + "/" + capitalisedShortCode;
+        String company = companyCode;
+        SingleFlightCache.Loader<String, AffiliateDetails> loader = k -> requestAffiliateDetails(company, capitalisedShortCode, trackUsage);
+        if (trackUsage) {
+            // Usage is counted by the server, so these always reach it unless the code is known not to exist
+            affiliateDetailsCache.reload(key, loader, call::complete);
+        } else {
+            affiliateDetailsCache.get(key, loader, call::complete);
+        }
+    }
+
+    /**
+     * getAffiliateDetailsDebounced with a 300ms delay.
+     */
+    public static void getAffiliateDetailsDebounced(String shortCode, AffiliateDetailsCallback callback) {
+        getAffiliateDetailsDebounced(shortCode, DEFAULT_DEBOUNCE_MILLIS, callback);
+    }
+
+    /**
+     * Like getAffiliateDetails, for validating a code while the user types: the lookup waits
+     * until the code has not changed for delayMillis, and a newer call supersedes older ones.
+     * Superseded calls never get a callback, so results can't arrive out of order.
+     * @param shortCode The short code currently entered
+     * @param delayMillis How long the code must be unchanged before it is looked up (e.g. 300)
+     * @param callback Callback that receives the affiliate details (null if not found or error)
+     */
+    public static void getAffiliateDetailsDebounced(String shortCode, long delayMillis, AffiliateDetailsCallback callback) {
+        long lookup = latestDebouncedLookup.incrementAndGet();
+        synchronized (debounceLock) {
+            if (pendingDebouncedLookup != null) {
+                pendingDebouncedLookup.cancel(false);
+            }
+            pendingDebouncedLookup = SdkExecutors.scheduler().schedule(() -> SdkExecutors.io().execute(() -> {
+                if (lookup != latestDebouncedLookup.get()) {
+                    return;
+                }
+                getAffiliateDetails(shortCode, details -> {
+                    if (lookup == latestDebouncedLookup.get()) {
+                        callback.onAffiliateDetailsReceived(details);
+                    } else {
+                        SdkLog.v("Dropping superseded affiliate details result for: {}", shortCode);
+                    }
+                });
+            }), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
         }
+    }
+
+    /**
+     * Sets how long getAffiliateDetails results are cached.
+     * Pass 0 to always go to the network (concurrent identical lookups are still merged).
+     * @param ttlSeconds How long an existing affiliate is remembered (default 5 minutes)
+     * @param notFoundTtlSeconds How long a code that doesn't exist is remembered (default 30 seconds)
+     */
+    public static void setAffiliateDetailsCacheTtl(long ttlSeconds, long notFoundTtlSeconds) {
+        affiliateDetailsCache.setTtl(TimeUnit.SECONDS.toMillis(ttlSeconds), TimeUnit.SECONDS.toMillis(notFoundTtlSeconds), 0);
+        SdkLog.v("Affiliate details cache TTL set to {}s (not found: {}s)", ttlSeconds, notFoundTtlSeconds);
+    }
 
-        String apiUrl = "https://api.insertaffiliate.com/V1/checkAffiliateExists";
+    // Runs on the cache's loader thread
+    private static SingleFlightCache.Loaded<AffiliateDetails> requestAffiliateDetails(String companyCode, String capitalisedShortCode, boolean trackUsage) {
+        String apiUrl = Api.BASE_URL_INSERT_AFFILIATE + "V1/checkAffiliateExists";
 
         // Build JSON payload
-        JSONObject payload = new JSONObject();
+        RequestBody body;
         try {
-            payload.put("companyId", companyCode);
-            payload.put("affiliateCode", capitalisedShortCode);
-            if (trackUsage) {
-                payload.put("trackUsage", true);
-            }
+            body = JsonBody.of(Payloads.checkAffiliateExists(companyCode, capitalisedShortCode, trackUsage));
         } catch (Exception e) {
-            Log.e("InsertAffiliate TAG", "[Insert Affiliate] Failed to build JSON payload: " + e.getMessage());
-            callback.onAffiliateDetailsReceived(null);
-            return;
+            SdkLog.e("[Insert Affiliate] Failed to build JSON payload: " + e.getMessage());
+            return SingleFlightCache.Loaded.failed();
         }
 
-        verboseLog("Getting affiliate details for: " + capitalisedShortCode);
+        SdkLog.v("Getting affiliate details for: {}", capitalisedShortCode);
 
-        new Thread(() -> {
-            HttpURLConnection connection = null;
-            try {
-                URL url = new URL(apiUrl);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setDoOutput(true);
-
-                // Write JSON payload
-                byte[] outputBytes = payload.toString().getBytes(StandardCharsets.UTF_8);
-                connection.getOutputStream().write(outputBytes);
-
-                int responseCode = connection.getResponseCode();
-                verboseLog("Affiliate details response status: " + responseCode);
-
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String inputLine;
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
+        Request request = new Request.Builder()
+                .url(apiUrl)
+                .post(body)
+                .build();
 
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    verboseLog("Affiliate details response: " + jsonResponse.toString());
+        try (Response response = ApiClient.http().newCall(request).execute()) {
+            int responseCode = response.code();
+            SdkLog.v("Affiliate details response status: {}", responseCode);
 
-                    // Check if affiliate exists
-                    boolean exists = jsonResponse.optBoolean("exists", false);
-                    if (exists && jsonResponse.has("affiliate")) {
-                        JSONObject affiliate = jsonResponse.getJSONObject("affiliate");
-                        String affiliateName = affiliate.optString("affiliateName", "");
-                        String affiliateShortCode = affiliate.optString("affiliateShortCode", capitalisedShortCode);
-                        String deeplinkUrl = affiliate.optString("deeplinkurl", "");
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                SdkLog.e("[Insert Affiliate] Error fetching affiliate details: HTTP " + responseCode);
+                return SingleFlightCache.Loaded.failed();
+            }
 
-                        AffiliateDetails details = new AffiliateDetails(affiliateName, affiliateShortCode, deeplinkUrl);
-                        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Successfully fetched affiliate details for: " + affiliateName);
-                        callback.onAffiliateDetailsReceived(details);
-                    } else {
-                        Log.i("InsertAffiliate TAG", "[Insert Affiliate] Affiliate not found for short code: " + capitalisedShortCode);
-                        callback.onAffiliateDetailsReceived(null);
-                    }
-                } else {
-                    Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error fetching affiliate details: HTTP " + responseCode);
-                    callback.onAffiliateDetailsReceived(null);
-                }
-            } catch (Exception e) {
-                Log.e("InsertAffiliate TAG", "[Insert Affiliate] Error fetching affiliate details: " + e.getMessage());
-                callback.onAffiliateDetailsReceived(null);
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
+            // Null unless the affiliate exists
+            AffiliateDetails details = JsonResponses.affiliateDetails(response.body().charStream(), capitalisedShortCode);
+            if (details != null) {
+                SdkLog.v("Affiliate details response: name={}, shortCode={}, deeplinkUrl={}",
+                        details.getAffiliateName(), details.getAffiliateShortCode(), details.getDeeplinkUrl());
+                SdkLog.i("[Insert Affiliate] Successfully fetched affiliate details for: " + details.getAffiliateName());
+                return SingleFlightCache.Loaded.found(details);
             }
-        }).start();
+            SdkLog.i("[Insert Affiliate] Affiliate not found for short code: " + capitalisedShortCode);
+            return SingleFlightCache.Loaded.notFound();
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Error fetching affiliate details: " + e.getMessage());
+            return SingleFlightCache.Loaded.failed();
+        }
     }
 }
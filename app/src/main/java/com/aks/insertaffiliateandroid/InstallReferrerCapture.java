@@ -0,0 +1,240 @@
+package com.aks.insertaffiliateandroid;
+
+import com.android.installreferrer.api.InstallReferrerClient;
+import com.android.installreferrer.api.InstallReferrerClient.InstallReferrerResponse;
+import com.android.installreferrer.api.InstallReferrerStateListener;
+import com.android.installreferrer.api.ReferrerDetails;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Fetches the Play install referrer once per install.
+ *
+ * The referrer never changes after install, so the outcome is persisted: the referrer itself,
+ * "none" when Play has no referrer, or "unsupported". Once an outcome is stored, later
+ * captures return after one local read, without binding to the Play service. The outcome is
+ * stored before the referrer is handed on, so a captured referrer the app has not handled
+ * yet (the process died in between) is handed on again from storage at the next capture.
+ * SERVICE_UNAVAILABLE and dropped connections are retried with backoff; if every attempt
+ * fails nothing is stored and the next app start tries again. Every connection that is
+ * started is ended, whatever its outcome.
+ */
+final class InstallReferrerCapture {
+    static final String KEY_STATUS = "install_referrer_status";
+    static final String KEY_REFERRER = "install_referrer";
+    static final String STATUS_CAPTURED = "captured";
+    static final String STATUS_NONE = "none";
+    static final String STATUS_UNSUPPORTED = "unsupported";
+
+    static final int MAX_ATTEMPTS = 4;
+    static final long DEFAULT_RETRY_DELAY_MILLIS = 1_000;
+
+    /**
+     * One connection to the referrer service; a thin seam over InstallReferrerClient.
+     */
+    interface Connection {
+        void start(InstallReferrerStateListener listener);
+
+        String getInstallReferrer() throws Exception;
+
+        void end();
+    }
+
+    private final KeyValueStore store;
+    private final Supplier<Connection> connections;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long retryDelayMillis;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    InstallReferrerCapture(KeyValueStore store, Supplier<Connection> connections, Executor executor,
+                           ScheduledExecutorService scheduler, long retryDelayMillis) {
+        this.store = store;
+        this.connections = connections;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Wraps a real InstallReferrerClient.
+     */
+    static Connection playConnection(InstallReferrerClient client) {
+        return new Connection() {
+            @Override
+            public void start(InstallReferrerStateListener listener) {
+                client.startConnection(listener);
+            }
+
+            @Override
+            public String getInstallReferrer() throws Exception {
+                ReferrerDetails details = client.getInstallReferrer();
+                return details != null ? details.getInstallReferrer() : null;
+            }
+
+            @Override
+            public void end() {
+                client.endConnection();
+            }
+        };
+    }
+
+    /**
+     * Fetches the referrer in the background unless an outcome is already stored, and hands a
+     * newly captured, non-empty referrer to onReferrer. A stored referrer for which handled
+     * returns false is handed to onReferrer again. Calls made while a capture is running are
+     * ignored.
+     */
+    void capture(Consumer<String> onReferrer, Predicate<String> handled) {
+        if (!running.compareAndSet(false, true)) {
+            SdkLog.v("Install referrer capture already running");
+            return;
+        }
+        executor.execute(() -> {
+            String status = store.getString(KEY_STATUS, null);
+            if (status != null) {
+                String stored = STATUS_CAPTURED.equals(status) ? storedReferrer() : null;
+                running.set(false);
+                if (stored != null && !stored.isEmpty() && !handled.test(stored)) {
+                    SdkLog.v("Install referrer captured but not handled, handing it on again");
+                    onReferrer.accept(stored);
+                } else {
+                    SdkLog.v("Install referrer already captured ({}), skipping", status);
+                }
+                return;
+            }
+            attempt(1, onReferrer);
+        });
+    }
+
+    /**
+     * The stored outcome: STATUS_CAPTURED, STATUS_NONE, STATUS_UNSUPPORTED, or null if the
+     * referrer has not been captured yet.
+     */
+    String status() {
+        return store.getString(KEY_STATUS, null);
+    }
+
+    /**
+     * The referrer captured for this install, or null.
+     */
+    String storedReferrer() {
+        return store.getString(KEY_REFERRER, null);
+    }
+
+    private void attempt(int attempt, Consumer<String> onReferrer) {
+        SdkLog.v("Connecting to install referrer service (attempt {} of {})", attempt, MAX_ATTEMPTS);
+        Connection connection;
+        try {
+            connection = connections.get();
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Could not create install referrer client: " + e.getMessage());
+            running.set(false);
+            return;
+        }
+
+        // Setup and disconnect callbacks arrive on the main thread; only the first one counts
+        AtomicBoolean settled = new AtomicBoolean();
+        InstallReferrerStateListener listener = new InstallReferrerStateListener() {
+            @Override
+            public void onInstallReferrerSetupFinished(int responseCode) {
+                if (settled.compareAndSet(false, true)) {
+                    // getInstallReferrer is a binder call, keep it off the main thread
+                    executor.execute(() -> finish(connection, responseCode, attempt, onReferrer));
+                }
+            }
+
+            @Override
+            public void onInstallReferrerServiceDisconnected() {
+                if (settled.compareAndSet(false, true)) {
+                    executor.execute(() -> finish(connection, InstallReferrerResponse.SERVICE_DISCONNECTED, attempt, onReferrer));
+                }
+            }
+        };
+        try {
+            connection.start(listener);
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Could not connect to install referrer service: " + e.getMessage());
+            if (settled.compareAndSet(false, true)) {
+                finish(connection, InstallReferrerResponse.SERVICE_DISCONNECTED, attempt, onReferrer);
+            }
+        }
+    }
+
+    private void finish(Connection connection, int responseCode, int attempt, Consumer<String> onReferrer) {
+        String referrer = null;
+        boolean retry = false;
+        try {
+            switch (responseCode) {
+                case InstallReferrerResponse.OK:
+                    referrer = connection.getInstallReferrer();
+                    SdkLog.v("Raw referrer data: {}", referrer);
+                    if (referrer != null && !referrer.isEmpty()) {
+                        persist(STATUS_CAPTURED, referrer);
+                    } else {
+                        SdkLog.v("No referrer data found");
+                        persist(STATUS_NONE, null);
+                    }
+                    break;
+
+                case InstallReferrerResponse.FEATURE_NOT_SUPPORTED:
+                    SdkLog.v("Install referrer feature not supported on this device");
+                    persist(STATUS_UNSUPPORTED, null);
+                    break;
+
+                case InstallReferrerResponse.SERVICE_UNAVAILABLE:
+                case InstallReferrerResponse.SERVICE_DISCONNECTED:
+                    SdkLog.v("Install referrer service unavailable (code {})", responseCode);
+                    retry = true;
+                    break;
+
+                default:
+                    SdkLog.v("Install referrer setup failed with code: {}", responseCode);
+                    break;
+            }
+        } catch (Exception e) {
+            // Usually a RemoteException from a service that died mid-call
+            SdkLog.e("[Insert Affiliate] Error getting install referrer details: " + e.getMessage());
+            referrer = null;
+            retry = true;
+        } finally {
+            end(connection);
+        }
+
+        if (retry && attempt < MAX_ATTEMPTS) {
+            long delay = retryDelayMillis << (attempt - 1);
+            SdkLog.v("Retrying install referrer capture in {} ms", delay);
+            scheduler.schedule(() -> executor.execute(() -> attempt(attempt + 1, onReferrer)), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        running.set(false);
+        if (referrer != null && !referrer.isEmpty()) {
+            onReferrer.accept(referrer);
+        }
+    }
+
+    private void persist(String status, String referrer) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(KEY_STATUS, status);
+        values.put(KEY_REFERRER, referrer);
+        if (!store.writeSync(values)) {
+            SdkLog.e("[Insert Affiliate] Failed to persist install referrer, it will be fetched again next launch");
+        }
+    }
+
+    private static void end(Connection connection) {
+        try {
+            connection.end();
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Error ending install referrer connection: " + e.getMessage());
+        }
+    }
+}
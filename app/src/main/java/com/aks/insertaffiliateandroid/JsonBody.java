@@ -0,0 +1,86 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+/**
+ * A JSON request body written by a {@link Payloads.Body}.
+ *
+ * The JsonWriter writes UTF-8 straight into an okio Buffer, whose segments come from okio's
+ * pool, so no String or byte[] copy of the body is made. The buffer is filled once, which
+ * keeps a Content-Length header on the request; each send shares its segments with the
+ * connection instead of copying them.
+ */
+final class JsonBody extends RequestBody {
+    private final Buffer encoded;
+
+    private JsonBody(Buffer encoded) {
+        this.encoded = encoded;
+    }
+
+    static RequestBody of(Payloads.Body body) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = Payloads.newWriter(new BufferWriter(buffer));
+        body.writeTo(writer);
+        writer.flush();
+        return new JsonBody(buffer);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return ApiClient.JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        return encoded.size();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        encoded.copyTo(sink.getBuffer(), 0, encoded.size());
+        sink.emitCompleteSegments();
+    }
+
+    /**
+     * Encodes chars into a Buffer as UTF-8. JsonWriter writes its strings through
+     * write(String, int, int), which okio encodes without copying the String.
+     */
+    private static final class BufferWriter extends Writer {
+        private final Buffer buffer;
+
+        BufferWriter(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int c) {
+            buffer.writeUtf8CodePoint(c);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            buffer.writeUtf8(str, off, off + len);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buffer.writeUtf8(new String(cbuf, off, len));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming readers for the JSON responses the SDK looks inside.
+ *
+ * Each reader pulls the few fields it needs straight off the response stream and skips the
+ * rest, without building the body as a String or a DOM. Missing, null and non-string fields
+ * read as their defaults, as optString did.
+ */
+final class JsonResponses {
+    static final String SHORT_LINK = "shortLink";
+    static final String EXISTS = "exists";
+    static final String AFFILIATE = "affiliate";
+    static final String AFFILIATE_NAME = "affiliateName";
+    static final String AFFILIATE_SHORT_CODE = "affiliateShortCode";
+    static final String DEEPLINK_URL = "deeplinkurl";
+
+    private JsonResponses() {
+    }
+
+    /**
+     * The shortLink from a convert-deep-link-to-short-link response, or "" if it has none.
+     */
+    static String shortLink(Reader body) throws IOException {
+        try (JsonReader reader = new JsonReader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(SHORT_LINK)) {
+                    return optString(reader, "");
+                }
+                reader.skipValue();
+            }
+            return "";
+        }
+    }
+
+    /**
+     * The affiliate in a checkAffiliateExists response, or null if it does not exist.
+     * @param defaultShortCode The short code to report if the response leaves it out
+     */
+    static InsertAffiliateManager.AffiliateDetails affiliateDetails(Reader body, String defaultShortCode) throws IOException {
+        boolean exists = false;
+        InsertAffiliateManager.AffiliateDetails affiliate = null;
+        try (JsonReader reader = new JsonReader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals(EXISTS)) {
+                    exists = optBoolean(reader);
+                } else if (name.equals(AFFILIATE) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    affiliate = readAffiliate(reader, defaultShortCode);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        return exists ? affiliate : null;
+    }
+
+    private static InsertAffiliateManager.AffiliateDetails readAffiliate(JsonReader reader, String defaultShortCode) throws IOException {
+        String affiliateName = "";
+        String affiliateShortCode = defaultShortCode;
+        String deeplinkUrl = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case AFFILIATE_NAME:
+                    affiliateName = optString(reader, affiliateName);
+                    break;
+                case AFFILIATE_SHORT_CODE:
+                    affiliateShortCode = optString(reader, affiliateShortCode);
+                    break;
+                case DEEPLINK_URL:
+                    deeplinkUrl = optString(reader, deeplinkUrl);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new InsertAffiliateManager.AffiliateDetails(affiliateName, affiliateShortCode, deeplinkUrl);
+    }
+
+    private static String optString(JsonReader reader, String defaultValue) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return defaultValue;
+        }
+    }
+
+    private static boolean optBoolean(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case STRING:
+                return "true".equalsIgnoreCase(reader.nextString());
+            default:
+                reader.skipValue();
+                return false;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link UploadScheduler} on a plain ScheduledExecutorService, for JVM tests and for devices
+ * where WorkManager is not available.
+ *
+ * Whether the device is unmetered or charging comes from a supplier, which is checked when a
+ * task becomes due and then every pollMillis until its max delay. A task that is due while
+ * conditions are met is started straight away on the calling thread; nothing waits for it to
+ * finish, as there is no wakelock to hold.
+ */
+final class JvmUploadScheduler implements UploadScheduler {
+    static final long DEFAULT_POLL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final class Pending {
+        final Task task;
+        final long deadlineNanos;
+        ScheduledFuture<?> check;
+        boolean polling; // Past its min delay, waiting for conditions or the deadline
+
+        Pending(Task task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final BooleanSupplier unmeteredOrCharging;
+    private final long pollMillis;
+    private final Map<String, Pending> pending = new HashMap<>(); // Guarded by this
+
+    JvmUploadScheduler(ScheduledExecutorService scheduler, BooleanSupplier unmeteredOrCharging, long pollMillis) {
+        this.scheduler = scheduler;
+        this.unmeteredOrCharging = unmeteredOrCharging;
+        this.pollMillis = Math.max(1, pollMillis);
+    }
+
+    @Override
+    public void schedule(String name, long minDelayMillis, long maxDelayMillis, Task task) {
+        long minDelay = Math.max(0, minDelayMillis);
+        Pending entry = new Pending(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(minDelay, maxDelayMillis)));
+        synchronized (this) {
+            Pending replaced = pending.put(name, entry);
+            if (replaced != null && replaced.check != null) {
+                replaced.check.cancel(false);
+            }
+            if (minDelay > 0) {
+                entry.check = scheduler.schedule(() -> check(name, entry), minDelay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        check(name, entry);
+    }
+
+    /**
+     * Re-checks every waiting task now, e.g. after the network or power state changed.
+     * Tasks still inside their min delay keep waiting.
+     */
+    void conditionsChanged() {
+        List<Map.Entry<String, Pending>> waiting = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                if (entry.getValue().polling) {
+                    waiting.add(entry);
+                }
+            }
+        }
+        for (Map.Entry<String, Pending> entry : waiting) {
+            check(entry.getKey(), entry.getValue());
+        }
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void check(String name, Pending entry) {
+        boolean run;
+        synchronized (this) {
+            if (pending.get(name) != entry) {
+                return; // Replaced or already run
+            }
+            long remainingNanos = entry.deadlineNanos - System.nanoTime();
+            run = remainingNanos <= 0 || unmeteredOrCharging.getAsBoolean();
+            if (entry.check != null) {
+                entry.check.cancel(false);
+            }
+            if (run) {
+                pending.remove(name);
+            } else {
+                entry.polling = true;
+                entry.check = scheduler.schedule(() -> check(name, entry),
+                        Math.min(pollMillis, TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (run) {
+            try {
+                entry.task.run();
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] Error running scheduled upload " + name + ": " + e.getMessage());
+            }
+        }
+    }
+}
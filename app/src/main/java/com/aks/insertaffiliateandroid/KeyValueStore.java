@@ -0,0 +1,20 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.Map;
+
+/**
+ * Minimal key-value persistence used by the SDK's state stores.
+ * Backed by SharedPreferences on device and by an in-memory map in JVM tests.
+ */
+interface KeyValueStore {
+    String getString(String key, String defaultValue);
+
+    long getLong(String key, long defaultValue);
+
+    /**
+     * Durably writes all values in one transaction (String, Long or Boolean; null removes the key).
+     * Blocks until the data is on disk, so it must only be called from a background thread.
+     * @return true if the write succeeded
+     */
+    boolean writeSync(Map<String, Object> values);
+}
@@ -0,0 +1,13 @@
+package com.aks.insertaffiliateandroid;
+
+import android.util.Log;
+
+/**
+ * Default {@link SdkLog.Sink}: writes to Logcat.
+ */
+final class LogcatSink implements SdkLog.Sink {
+    @Override
+    public void log(int priority, String tag, String message) {
+        Log.println(priority, tag, message);
+    }
+}
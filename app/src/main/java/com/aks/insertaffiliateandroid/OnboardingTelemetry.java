@@ -0,0 +1,217 @@
+package com.aks.insertaffiliateandroid;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Background job that delivers onboarding telemetry (sdk-init and affiliate-associated).
+ *
+ * Reports are keyed and queued in their own outbox, so attempt counts survive restarts and a
+ * report is only queued once. Nothing is sent in the first seconds after init, and a failure
+ * pushes the next attempt back exponentially (30 seconds up to 6 hours). That time is
+ * persisted, so a device on bad Wi-Fi does not retry on every launch. Pending reports also go
+ * out whenever another SDK request succeeds, on the connection it just warmed. At most
+ * MAX_REQUESTS_PER_DAY requests are made per (UTC) day. Sends are not urgent, so they go
+ * through the {@link UploadScheduler} and wait for an unmetered network or charging, for at
+ * most MAX_DEFER_MILLIS.
+ */
+final class OnboardingTelemetry implements Outbox.Sender {
+    static final String SDK_INIT_ID = "sdk-init";
+    static final String ASSOCIATION_ID_PREFIX = "affiliate-associated:";
+
+    static final String KEY_NEXT_ATTEMPT = "onboarding_next_attempt_at";
+    static final String KEY_BUDGET_DAY = "onboarding_budget_day";
+    static final String KEY_BUDGET_USED = "onboarding_budget_used";
+
+    static final int MAX_QUEUED_REPORTS = 64;
+    static final int MAX_REQUESTS_PER_DAY = 8;
+    static final long STARTUP_DELAY_MILLIS = 15_000;
+    static final long BASE_BACKOFF_MILLIS = 30_000;
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(6);
+    static final long MAX_DEFER_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final String DRAIN_UPLOAD_NAME = "Onboarding drain";
+
+    private final String baseUrl;
+    private final Supplier<Call.Factory> http;
+    private final KeyValueStore store;
+    private final UploadScheduler uploadScheduler;
+    private final LongSupplier clock;
+    private final Consumer<String> onDelivered;
+    private final Outbox outbox;
+
+    // Guarded by this
+    private long notBeforeMillis = 0;
+    private long drainScheduledAtMillis = 0; // 0 when no drain is scheduled
+
+    /**
+     * @param onDelivered Told the id of each report the backend accepted
+     */
+    OnboardingTelemetry(File file, String baseUrl, Supplier<Call.Factory> http, KeyValueStore store, Executor executor,
+                        ScheduledExecutorService scheduler, Executor diskExecutor, UploadScheduler uploadScheduler, LongSupplier clock,
+                        Consumer<String> onDelivered) {
+        this.baseUrl = baseUrl;
+        this.http = http;
+        this.store = store;
+        this.uploadScheduler = uploadScheduler;
+        this.clock = clock;
+        this.onDelivered = onDelivered;
+        this.outbox = new Outbox("Onboarding", file, MAX_QUEUED_REPORTS, this, executor, scheduler, diskExecutor);
+        outbox.setUploadScheduler(uploadScheduler, MAX_DEFER_MILLIS);
+    }
+
+    /**
+     * Called at init: holds reports until the startup delay, or a persisted backoff, has
+     * passed, then sends whatever is pending.
+     */
+    void start() {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            notBeforeMillis = Math.max(store.getLong(KEY_NEXT_ATTEMPT, 0), now + STARTUP_DELAY_MILLIS);
+        }
+        // Loads reports left from earlier sessions; if there are any, the send is deferred and a drain scheduled
+        outbox.drain();
+    }
+
+    /**
+     * Queues a report unless one with this id is already pending. It is sent as soon as the
+     * job allows.
+     */
+    void report(String id, String payload) {
+        outbox.enqueueIfAbsent(id, payload, queued -> {
+            if (!queued) {
+                SdkLog.v("Onboarding report already queued: {}", id);
+            }
+        });
+    }
+
+    /**
+     * Sends pending reports if the backoff has passed. Cheap enough to call after every
+     * successful SDK request.
+     */
+    void drainIfDue() {
+        if (outbox.size() == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (clock.getAsLong() < notBeforeMillis) {
+                return;
+            }
+        }
+        outbox.drain();
+    }
+
+    int size() {
+        return outbox.size();
+    }
+
+    @Override
+    public Outbox.Result send(Outbox.Entry entry) {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            if (now < notBeforeMillis) {
+                scheduleDrain(notBeforeMillis, now);
+                return Outbox.Result.DEFER;
+            }
+            if (!takeBudget(now)) {
+                long tomorrow = (now / TimeUnit.DAYS.toMillis(1) + 1) * TimeUnit.DAYS.toMillis(1);
+                InsertAffiliateManager.verboseLog("Onboarding request budget used up for today, deferring reports");
+                scheduleDrain(tomorrow, now);
+                return Outbox.Result.DEFER;
+            }
+        }
+
+        String path = entry.id.equals(SDK_INIT_ID) ? "V1/onboarding/sdk-init" : "V1/onboarding/affiliate-associated";
+        Request request = new Request.Builder()
+                .url(baseUrl + path)
+                .post(RequestBody.create(entry.payload, ApiClient.JSON))
+                .build();
+
+        Outbox.Result result;
+        try (Response response = http.get().newCall(request).execute()) {
+            entry.lastStatusCode = response.code();
+            result = Outbox.resultForStatus(response.code());
+            SdkLog.v("Onboarding report {} finished with status: {}", entry.id, response.code());
+        } catch (IOException e) {
+            entry.lastStatusCode = 0;
+            SdkLog.v("Onboarding report {} error: {}", entry.id, e.getMessage());
+            result = Outbox.Result.RETRY;
+        }
+
+        if (result == Outbox.Result.DELIVERED) {
+            onDelivered.accept(entry.id);
+        } else if (result == Outbox.Result.RETRY) {
+            long next = now + backoffMillis(entry.attempts + 1);
+            synchronized (this) {
+                notBeforeMillis = next;
+                scheduleDrain(next, now);
+            }
+            persist(KEY_NEXT_ATTEMPT, next);
+        }
+        return result;
+    }
+
+    /**
+     * Delay before the next attempt after the given number of failures: a random point
+     * between half and all of min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS * 2^(attempts - 1)).
+     */
+    static long backoffMillis(int attempts) {
+        long ceiling = BASE_BACKOFF_MILLIS << Math.min(Math.max(0, attempts - 1), 20);
+        if (ceiling <= 0 || ceiling > MAX_BACKOFF_MILLIS) {
+            ceiling = MAX_BACKOFF_MILLIS;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    // Called with the lock held; counts one request against today's budget if any is left
+    private boolean takeBudget(long now) {
+        long today = now / TimeUnit.DAYS.toMillis(1);
+        long used = store.getLong(KEY_BUDGET_DAY, -1) == today ? store.getLong(KEY_BUDGET_USED, 0) : 0;
+        if (used >= MAX_REQUESTS_PER_DAY) {
+            return false;
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put(KEY_BUDGET_DAY, today);
+        values.put(KEY_BUDGET_USED, used + 1);
+        if (!store.writeSync(values)) {
+            SdkLog.e("[Insert Affiliate] Failed to persist onboarding request budget");
+        }
+        return true;
+    }
+
+    // Called with the lock held; keeps only the earliest pending drain
+    private void scheduleDrain(long atMillis, long now) {
+        if (drainScheduledAtMillis != 0 && drainScheduledAtMillis <= atMillis) {
+            return;
+        }
+        drainScheduledAtMillis = atMillis;
+        long delay = Math.max(0, atMillis - now);
+        uploadScheduler.schedule(DRAIN_UPLOAD_NAME, delay, delay + MAX_DEFER_MILLIS, () -> {
+            synchronized (this) {
+                drainScheduledAtMillis = 0;
+            }
+            return outbox.drain();
+        });
+    }
+
+    private void persist(String key, long value) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(key, value);
+        if (!store.writeSync(values)) {
+            SdkLog.e("[Insert Affiliate] Failed to persist onboarding retry time");
+        }
+    }
+}
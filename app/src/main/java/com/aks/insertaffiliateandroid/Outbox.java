@@ -0,0 +1,629 @@
+package com.aks.insertaffiliateandroid;
+
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Durable on-device queue for requests that must not be lost on a flaky network.
+ *
+ * Entries are appended to a file before they are sent, delivered in order by a background
+ * drainer, retried with exponential backoff and jitter, and reloaded after process death.
+ * enqueue does no file I/O on the caller's thread: the entry is handed to the disk lane, which
+ * appends and fsyncs it to a small journal and only then passes it to the outbox's own thread
+ * to be moved into the queue file (the queue thread also runs sends, so journaling there could
+ * mean waiting on the network).
+ * When the queue is full the oldest entry is evicted. Entries may be keyed, so the same
+ * request is only queued once.
+ *
+ * With batching enabled, entries are held until maxBatchSize are pending, the batch window
+ * elapses or {@link #flush()} is called, and are then sent together in one request.
+ *
+ * With an {@link UploadScheduler} set, new entries are not sent straight away but when the
+ * device is on an unmetered network or charging, or after the max delay (a full batch still
+ * goes at once). Retries and explicit drains are not deferred.
+ */
+final class Outbox {
+    static final long BASE_BACKOFF_MILLIS = 2_000;
+    static final long MAX_BACKOFF_MILLIS = 10 * 60_000;
+    static final int MAX_ATTEMPTS = 12;
+
+    /**
+     * Outcome of one delivery attempt.
+     */
+    enum Result {
+        DELIVERED, // Remove the entry
+        RETRY,     // Keep the entry and try again after a backoff
+        DROP,      // Remove the entry, it can never succeed (e.g. HTTP 400)
+        DEFER,     // Not sent (e.g. out of budget): keep the entry without using up an attempt and stop draining until the next drain()
+        UNBATCHED  // Batches only: the batch cannot be sent as one (e.g. HTTP 404), send these entries one at a time instead
+    }
+
+    interface Sender {
+        Result send(Entry entry);
+    }
+
+    interface BatchSender {
+        Result sendBatch(List<Entry> batch);
+    }
+
+    /**
+     * Told when an entry leaves the queue: DELIVERED, or DROP if it was rejected, evicted or
+     * ran out of attempts. Listeners are in-memory only and do not survive process death.
+     */
+    interface CompletionListener {
+        void onComplete(Entry entry, Result result);
+    }
+
+    static final class Entry {
+        final String id;
+        final String payload;
+        final long createdAtMillis;
+        int attempts;
+        int lastStatusCode; // Status of the latest attempt, 0 if it never got a response (not persisted)
+
+        Entry(String id, String payload, long createdAtMillis, int attempts) {
+            this.id = id;
+            this.payload = payload;
+            this.createdAtMillis = createdAtMillis;
+            this.attempts = attempts;
+        }
+    }
+
+    private final String name;
+    private final File file;
+    private final File journal;
+    private final Object journalLock = new Object();
+    private int journaled = 0; // Entries in the journal not yet in the queue file; guarded by journalLock
+    private final int maxEntries;
+    private final int maxAttempts;
+    private final Sender sender;
+    private final Executor serial;
+    private final ScheduledExecutorService scheduler;
+    private final Executor disk; // Journal appends, in enqueue order
+
+    // Only touched on the serial executor
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final HashMap<String, CompletionListener> listeners = new HashMap<>();
+    private final HashSet<String> recovered = new HashSet<>(); // Ids loaded from the journal whose add() has not run yet
+    private CompletionListener completionListener;
+    private boolean loaded = false;
+    private volatile int depth = 0; // entries.size(), readable from any thread
+    private boolean retryScheduled = false;
+    private boolean flushScheduled = false;
+    private BatchSender batchSender;
+    private int maxBatchSize = 1;
+    private long batchWindowMillis = 0;
+    private UploadScheduler uploadScheduler;
+    private long maxDeferMillis = 0;
+    private boolean uploadScheduled = false;
+
+    Outbox(String name, File file, int maxEntries, Sender sender, Executor executor, ScheduledExecutorService scheduler,
+           Executor diskExecutor) {
+        this(name, file, maxEntries, MAX_ATTEMPTS, sender, executor, scheduler, diskExecutor);
+    }
+
+    /**
+     * @param diskExecutor Runs the journal appends; must run tasks one at a time, in order
+     */
+    Outbox(String name, File file, int maxEntries, int maxAttempts, Sender sender, Executor executor, ScheduledExecutorService scheduler,
+           Executor diskExecutor) {
+        this.name = name;
+        this.file = file;
+        this.journal = new File(file.getPath() + ".journal");
+        this.maxEntries = maxEntries;
+        this.maxAttempts = maxAttempts;
+        this.sender = sender;
+        this.serial = new SdkExecutors.SerialExecutor(executor);
+        this.scheduler = scheduler;
+        this.disk = diskExecutor;
+    }
+
+    /**
+     * Persists the payload and schedules a drain.
+     * @return The id of the new entry
+     */
+    String enqueue(String payload) {
+        return enqueue(payload, null);
+    }
+
+    /**
+     * Persists the payload and schedules a drain, notifying the listener once the entry has
+     * been delivered or dropped. Returns once the entry is handed to the disk lane.
+     * @return The id of the new entry
+     */
+    String enqueue(String payload, CompletionListener listener) {
+        Entry entry = new Entry(UUID.randomUUID().toString(), payload, System.currentTimeMillis(), 0);
+        journalThen(entry, () -> {
+            loadIfNeeded();
+            add(entry, listener);
+        });
+        return entry.id;
+    }
+
+    /**
+     * Persists the payload under the given id and schedules a drain, unless an entry with
+     * that id is already queued. Returns once the entry is handed to the disk lane.
+     * @param queued Told true once the entry is queued, or false if it was a duplicate;
+     *               runs on the outbox's executor, before the entry is sent
+     */
+    void enqueueIfAbsent(String id, String payload, Consumer<Boolean> queued) {
+        enqueueIfAbsent(id, payload, null, queued);
+    }
+
+    /**
+     * Like {@link #enqueueIfAbsent(String, String, Consumer)}, but also treats the entry as a
+     * duplicate when skip matches its id. skip runs on the outbox's executor in the same task
+     * as the queue check, so nothing the Sender records between them can be missed.
+     */
+    void enqueueIfAbsent(String id, String payload, Predicate<String> skip, Consumer<Boolean> queued) {
+        Entry entry = new Entry(id, payload, System.currentTimeMillis(), 0);
+        journalThen(entry, () -> {
+            loadIfNeeded();
+            if (skip != null && skip.test(id)) {
+                if (recovered.remove(id)) {
+                    // Reloaded from the journal into the queue; take it back out
+                    entries.removeIf(pending -> pending.id.equals(id));
+                    rewrite();
+                }
+                unjournal();
+                queued.accept(false);
+                return;
+            }
+            // A recovered id is this entry itself, reloaded from the journal
+            if (!recovered.contains(id)) {
+                for (Entry pending : entries) {
+                    if (pending.id.equals(id)) {
+                        unjournal();
+                        queued.accept(false);
+                        return;
+                    }
+                }
+            }
+            queued.accept(true);
+            add(entry, null);
+        });
+    }
+
+    /**
+     * Sets a listener told about every entry that leaves the queue, including entries
+     * reloaded from disk after process death, after any per-entry listener.
+     */
+    void setCompletionListener(CompletionListener listener) {
+        serial.execute(() -> completionListener = listener);
+    }
+
+    private void add(Entry entry, CompletionListener listener) {
+        if (listener != null) {
+            listeners.put(entry.id, listener);
+        }
+        if (recovered.remove(entry.id)) {
+            // Already reloaded from the journal into entries and the queue file
+            unjournal();
+        } else {
+            entries.addLast(entry);
+            if (entries.size() > maxEntries) {
+                Entry evicted = entries.removeFirst();
+                SdkLog.i("[Insert Affiliate] " + name + " outbox full, evicted oldest entry: " + evicted.id);
+                complete(evicted, Result.DROP);
+                rewrite();
+            } else {
+                append(entry);
+            }
+            unjournal();
+        }
+
+        if (retryScheduled) {
+            // Already backing off; the pending retry will pick this entry up
+            return;
+        }
+        if (batchSender != null && entries.size() >= maxBatchSize) {
+            drainNow();
+        } else if (uploadScheduler != null) {
+            scheduleUpload();
+        } else if (batchSender != null) {
+            scheduleFlush();
+        } else {
+            drainNow();
+        }
+    }
+
+    /**
+     * Number of entries waiting for delivery, as of the last change.
+     */
+    int size() {
+        return depth;
+    }
+
+    /**
+     * Tries to deliver everything in the queue now (e.g. at startup, to flush entries left
+     * over from a previous process).
+     * @return A future that completes once this drain has finished
+     */
+    CompletableFuture<Void> drain() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        afterPendingEnqueues(() -> {
+            try {
+                loadIfNeeded();
+                drainNow();
+            } finally {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Sends any entries held back by batching now, unless a retry backoff is in progress.
+     */
+    void flush() {
+        afterPendingEnqueues(() -> {
+            loadIfNeeded();
+            if (!retryScheduled) {
+                drainNow();
+            }
+        });
+    }
+
+    /**
+     * Enables batching: entries are sent together once maxBatchSize are pending or
+     * windowMillis after the first one was queued, whichever comes first.
+     * Pass a null batchSender to send every entry on its own again.
+     */
+    void setBatching(BatchSender batchSender, int maxBatchSize, long windowMillis) {
+        serial.execute(() -> {
+            this.batchSender = batchSender;
+            this.maxBatchSize = batchSender != null ? Math.max(1, maxBatchSize) : 1;
+            this.batchWindowMillis = Math.max(0, windowMillis);
+        });
+    }
+
+    /**
+     * Defers sending new entries to the scheduler, for at most maxDeferMillis (with batching
+     * enabled, this replaces the batch window). Pass null to send them right away again.
+     */
+    void setUploadScheduler(UploadScheduler scheduler, long maxDeferMillis) {
+        serial.execute(() -> {
+            this.uploadScheduler = scheduler;
+            this.maxDeferMillis = Math.max(0, maxDeferMillis);
+            if (scheduler == null && !entries.isEmpty() && !retryScheduled) {
+                drainNow();
+            }
+        });
+    }
+
+    private void drainNow() {
+        boolean changed = false;
+        boolean needsRetry = false;
+        int batchLimit = maxBatchSize;
+        while (!entries.isEmpty()) {
+            List<Entry> batch = new ArrayList<>(Math.min(batchLimit, entries.size()));
+            Iterator<Entry> iterator = entries.iterator();
+            while (iterator.hasNext() && batch.size() < batchLimit) {
+                batch.add(iterator.next());
+            }
+
+            Result result;
+            try {
+                result = batch.size() == 1 || batchSender == null ? sender.send(batch.get(0)) : batchSender.sendBatch(batch);
+            } catch (Exception e) {
+                result = Result.RETRY;
+            }
+
+            if (result == Result.DEFER) {
+                break;
+            }
+            if (result == Result.UNBATCHED) {
+                if (batch.size() > 1) {
+                    // Nothing was delivered; resend the rest of this drain one entry at a time
+                    batchLimit = 1;
+                    continue;
+                }
+                result = Result.RETRY;
+            }
+
+            changed = true;
+            if (result != Result.RETRY) {
+                for (int i = 0; i < batch.size(); i++) {
+                    complete(entries.removeFirst(), result);
+                }
+                continue;
+            }
+
+            for (Entry entry : batch) {
+                entry.attempts++;
+                if (entry.attempts >= maxAttempts) {
+                    SdkLog.e("[Insert Affiliate] " + name + " outbox giving up on entry after " + entry.attempts + " attempts: " + entry.id);
+                    entries.remove(entry);
+                    complete(entry, Result.DROP);
+                }
+            }
+            // Keep ordering and back off: stop at the first batch that needs a retry, even if
+            // some of its entries were just given up on
+            needsRetry = !entries.isEmpty();
+            break;
+        }
+
+        if (changed) {
+            rewrite();
+        }
+        if (needsRetry) {
+            scheduleRetry(entries.peekFirst().attempts);
+        }
+    }
+
+    private void complete(Entry entry, Result result) {
+        notify(listeners.remove(entry.id), entry, result);
+        notify(completionListener, entry, result);
+    }
+
+    private void notify(CompletionListener listener, Entry entry, Result result) {
+        if (listener != null) {
+            try {
+                listener.onComplete(entry, result);
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] Error in " + name + " outbox completion listener: " + e.getMessage());
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        scheduler.schedule(() -> serial.execute(() -> {
+            flushScheduled = false;
+            if (!retryScheduled) {
+                drainNow();
+            }
+        }), batchWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleUpload() {
+        if (uploadScheduled) {
+            return;
+        }
+        uploadScheduled = true;
+        uploadScheduler.schedule(name, 0, maxDeferMillis, () -> {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            serial.execute(() -> {
+                try {
+                    uploadScheduled = false;
+                    if (!retryScheduled) {
+                        drainNow();
+                    }
+                } finally {
+                    done.complete(null);
+                }
+            });
+            return done;
+        });
+    }
+
+    private void scheduleRetry(int attempts) {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        long delay = backoffMillis(attempts);
+        scheduler.schedule(() -> serial.execute(() -> {
+            retryScheduled = false;
+            drainNow();
+        }), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between half and all of
+     * min(max, base * 2^attempts), so devices that failed together don't retry together.
+     */
+    static long backoffMillis(int attempts) {
+        long ceiling = BASE_BACKOFF_MILLIS << Math.min(attempts, 20);
+        if (ceiling <= 0 || ceiling > MAX_BACKOFF_MILLIS) {
+            ceiling = MAX_BACKOFF_MILLIS;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    // MARK: Persistence
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        HashSet<String> ids = new HashSet<>();
+        read(file, entry -> {
+            entries.addLast(entry);
+            ids.add(entry.id);
+        });
+        // Entries journaled by enqueue but not yet moved into the queue file, by this process
+        // (their add() is still pending) or by one that died before moving them
+        boolean fromJournal = false;
+        synchronized (journalLock) {
+            List<Entry> journaledEntries = new ArrayList<>();
+            read(journal, journaledEntries::add);
+            for (Entry entry : journaledEntries) {
+                if (ids.add(entry.id)) {
+                    entries.addLast(entry);
+                    recovered.add(entry.id);
+                    fromJournal = true;
+                }
+            }
+        }
+        while (entries.size() > maxEntries) {
+            recovered.remove(entries.removeFirst().id);
+        }
+        depth = entries.size();
+        if (fromJournal) {
+            rewrite();
+        }
+        synchronized (journalLock) {
+            if (journaled == 0) {
+                deleteJournal();
+            }
+        }
+    }
+
+    private void read(File source, Consumer<Entry> into) {
+        if (!source.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = decode(line);
+                if (entry != null) {
+                    into.accept(entry);
+                }
+            }
+        } catch (IOException e) {
+            SdkLog.e("[Insert Affiliate] Failed to load " + name + " outbox: " + e.getMessage());
+        }
+    }
+
+    // The queue task only runs once the entry is in the journal, so its unjournal() always
+    // follows the append
+    private void journalThen(Entry entry, Runnable queue) {
+        disk.execute(() -> {
+            journal(entry);
+            serial.execute(queue);
+        });
+    }
+
+    // Queued behind the disk lane, so entries enqueued before the call are included
+    private void afterPendingEnqueues(Runnable task) {
+        disk.execute(() -> serial.execute(task));
+    }
+
+    // Runs on the disk lane
+    private void journal(Entry entry) {
+        synchronized (journalLock) {
+            journaled++;
+            try (FileOutputStream out = new FileOutputStream(journal, true)) {
+                out.write((encode(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            } catch (IOException e) {
+                SdkLog.e("[Insert Affiliate] Failed to journal " + name + " outbox entry: " + e.getMessage());
+            }
+        }
+    }
+
+    // Called once the journaled entry is in the queue file (or was a duplicate)
+    private void unjournal() {
+        synchronized (journalLock) {
+            if (--journaled == 0) {
+                deleteJournal();
+            }
+        }
+    }
+
+    private void deleteJournal() {
+        if (journal.exists() && !journal.delete()) {
+            SdkLog.e("[Insert Affiliate] Failed to clear " + name + " outbox journal");
+        }
+    }
+
+    private void append(Entry entry) {
+        depth = entries.size();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write((encode(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            SdkLog.e("[Insert Affiliate] Failed to persist " + name + " outbox entry: " + e.getMessage());
+        }
+    }
+
+    private void rewrite() {
+        depth = entries.size();
+        if (entries.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                SdkLog.e("[Insert Affiliate] Failed to clear " + name + " outbox file");
+            }
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (Entry entry : entries) {
+                writer.write(encode(entry));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            SdkLog.e("[Insert Affiliate] Failed to rewrite " + name + " outbox: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            SdkLog.e("[Insert Affiliate] Failed to replace " + name + " outbox file");
+        }
+    }
+
+    private static String encode(Entry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", entry.id);
+        json.addProperty("payload", entry.payload);
+        json.addProperty("createdAt", entry.createdAtMillis);
+        json.addProperty("attempts", entry.attempts);
+        return json.toString();
+    }
+
+    private static Entry decode(String line) {
+        try {
+            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+            return new Entry(
+                    json.get("id").getAsString(),
+                    json.get("payload").getAsString(),
+                    json.get("createdAt").getAsLong(),
+                    json.get("attempts").getAsInt());
+        } catch (Exception e) {
+            // A torn write from a crash mid-append; skip the partial line
+            return null;
+        }
+    }
+
+    /**
+     * Maps an HTTP status code to an outbox result: 2xx is delivered, timeouts, rate limits and
+     * server errors are retried, and any other client error is dropped.
+     */
+    static Result resultForStatus(int statusCode) {
+        if (statusCode >= 200 && statusCode < 300) {
+            return Result.DELIVERED;
+        }
+        if (statusCode == 408 || statusCode == 429 || statusCode >= 500) {
+            return Result.RETRY;
+        }
+        return Result.DROP;
+    }
+
+    /**
+     * Snapshot of pending entries, for tests and diagnostics.
+     */
+    List<Entry> pendingEntries() {
+        return new ArrayList<>(entries);
+    }
+}
@@ -0,0 +1,147 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Builds the JSON request bodies the SDK sends, kept free of Android types so they can be
+ * benchmarked on the JVM.
+ *
+ * Every body is written field by field with Gson's streaming JsonWriter; there is no DOM in
+ * between. Bodies sent straight away are {@link Body} writers that {@link JsonBody} streams
+ * into the request. Bodies that are queued or logged first (trackEvent, the expected
+ * transaction, onboarding reports) are built as Strings by the same writers. Null values are
+ * left out, as org.json did.
+ */
+final class Payloads {
+    // Field names, shared by every body
+    static final String EVENT_NAME = "eventName";
+    static final String COMPANY_ID = "companyId";
+    static final String DEEP_LINK_PARAM = "deepLinkParam";
+    static final String UUID = "UUID";
+    static final String COMPANY_CODE = "companyCode";
+    static final String SHORT_CODE = "shortCode";
+    static final String STORED_DATE = "storedDate";
+    static final String AFFILIATE_IDENTIFIER = "affiliateIdentifier";
+    static final String SOURCE = "source";
+    static final String TIMESTAMP = "timestamp";
+    static final String AFFILIATE_CODE = "affiliateCode";
+    static final String TRACK_USAGE = "trackUsage";
+
+    /**
+     * Writes one JSON body. May be called more than once (e.g. when a request is retried).
+     */
+    interface Body {
+        void writeTo(JsonWriter writer) throws IOException;
+    }
+
+    private Payloads() {
+    }
+
+    /**
+     * Body for v1/trackEvent.
+     * @param deepLinkParam The affiliate identifier, already URL encoded where required
+     */
+    static String trackEvent(String eventName, String companyCode, String deepLinkParam) {
+        return toJson(writer -> writer.beginObject()
+                .name(EVENT_NAME).value(eventName)
+                .name(COMPANY_ID).value(companyCode)
+                .name(DEEP_LINK_PARAM).value(deepLinkParam)
+                .endObject());
+    }
+
+    /**
+     * Body for v1/api/app-store-webhook/create-expected-transaction.
+     * @param storedDate ISO8601 timestamp of when the purchase was started
+     */
+    static String expectedTransaction(String purchaseToken, String companyCode, String shortCode, String storedDate) {
+        return toJson(writer -> writer.beginObject()
+                .name(UUID).value(purchaseToken)
+                .name(COMPANY_CODE).value(companyCode)
+                .name(SHORT_CODE).value(shortCode)
+                .name(STORED_DATE).value(storedDate)
+                .endObject());
+    }
+
+    /**
+     * Body for V1/onboarding/sdk-init.
+     */
+    static Body sdkInit(String companyCode) {
+        return writer -> writer.beginObject()
+                .name(COMPANY_ID).value(companyCode)
+                .endObject();
+    }
+
+    /**
+     * Body for V1/onboarding/affiliate-associated.
+     * @param timestamp ISO8601 timestamp of the association
+     */
+    static Body affiliateAssociated(String companyCode, String affiliateIdentifier, String source, String timestamp) {
+        return writer -> writer.beginObject()
+                .name(COMPANY_ID).value(companyCode)
+                .name(AFFILIATE_IDENTIFIER).value(affiliateIdentifier)
+                .name(SOURCE).value(source)
+                .name(TIMESTAMP).value(timestamp)
+                .endObject();
+    }
+
+    /**
+     * Body for V1/checkAffiliateExists; trackUsage is only sent when true.
+     */
+    static Body checkAffiliateExists(String companyCode, String affiliateCode, boolean trackUsage) {
+        return writer -> {
+            writer.beginObject()
+                    .name(COMPANY_ID).value(companyCode)
+                    .name(AFFILIATE_CODE).value(affiliateCode);
+            if (trackUsage) {
+                writer.name(TRACK_USAGE).value(true);
+            }
+            writer.endObject();
+        };
+    }
+
+    /**
+     * A JsonWriter over out, configured the way every SDK body is written.
+     */
+    static JsonWriter newWriter(Writer out) {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setSerializeNulls(false);
+        return writer;
+    }
+
+    /**
+     * Whether a stored body is one well-formed JSON object. Streams over it without building
+     * a DOM, so queued bodies can be checked before they are sent as-is.
+     */
+    static boolean isJsonObject(String json) {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return false;
+            }
+            reader.skipValue();
+            return reader.peek() == JsonToken.END_DOCUMENT;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    static String toJson(Body body) {
+        StringWriter out = new StringWriter(128);
+        try {
+            JsonWriter writer = newWriter(out);
+            body.writeTo(writer);
+            writer.flush();
+        } catch (IOException e) {
+            // A StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
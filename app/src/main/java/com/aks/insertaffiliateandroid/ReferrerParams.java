@@ -0,0 +1,181 @@
+package com.aks.insertaffiliateandroid;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads parameters from the raw Play install referrer string (e.g. "utm_source=google&insertAffiliate=ABC").
+ *
+ * Parsing is a single pass over the string with no split arrays; names and values are
+ * percent-decoded as UTF-8 ('+' is a space), and only copied when they actually contain an
+ * escape. Malformed escapes are kept as-is. When a name repeats, the first value wins.
+ */
+final class ReferrerParams {
+    static final String INSERT_AFFILIATE = "insertAffiliate";
+
+    private static final ReferrerParams EMPTY = new ReferrerParams(Collections.emptyMap());
+
+    private final Map<String, String> params;
+
+    private ReferrerParams(Map<String, String> params) {
+        this.params = params;
+    }
+
+    /**
+     * Every parameter in the referrer, decoded. Never null.
+     */
+    static ReferrerParams parse(String rawReferrer) {
+        if (rawReferrer == null || rawReferrer.isEmpty()) {
+            return EMPTY;
+        }
+        LinkedHashMap<String, String> params = null;
+        int length = rawReferrer.length();
+        int start = 0;
+        while (start <= length) {
+            int end = rawReferrer.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                int equals = indexOf(rawReferrer, '=', start, end);
+                int nameEnd = equals < 0 ? end : equals;
+                String name = decode(rawReferrer, start, nameEnd);
+                if (!name.isEmpty()) {
+                    if (params == null) {
+                        params = new LinkedHashMap<>(8);
+                    }
+                    if (!params.containsKey(name)) {
+                        params.put(name, equals < 0 ? "" : decode(rawReferrer, equals + 1, end));
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        return params == null ? EMPTY : new ReferrerParams(Collections.unmodifiableMap(params));
+    }
+
+    /**
+     * The insertAffiliate parameter, decoded, or null if the referrer does not have one.
+     * Looks for just this parameter, matched on its raw name, without building the map.
+     */
+    static String insertAffiliate(String rawReferrer) {
+        if (rawReferrer == null) {
+            return null;
+        }
+        int length = rawReferrer.length();
+        int nameLength = INSERT_AFFILIATE.length();
+        int start = 0;
+        while (start < length) {
+            int end = rawReferrer.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end - start >= nameLength && rawReferrer.regionMatches(start, INSERT_AFFILIATE, 0, nameLength)) {
+                int valueStart = start + nameLength;
+                if (valueStart == end) {
+                    return "";
+                }
+                if (rawReferrer.charAt(valueStart) == '=') {
+                    return decode(rawReferrer, valueStart + 1, end);
+                }
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    String insertAffiliate() {
+        return params.get(INSERT_AFFILIATE);
+    }
+
+    /**
+     * The decoded value of the parameter, "" if it had no value, or null if it is absent.
+     */
+    String get(String name) {
+        return params.get(name);
+    }
+
+    /**
+     * All parameters in referrer order; unmodifiable.
+     */
+    Map<String, String> asMap() {
+        return params;
+    }
+
+    boolean isEmpty() {
+        return params.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return params.toString();
+    }
+
+    private static int indexOf(String s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Percent-decodes s[from, to) as UTF-8, returning a plain substring when nothing needs decoding
+    static String decode(String s, int from, int to) {
+        int i = from;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                break;
+            }
+            i++;
+        }
+        if (i == to) {
+            return s.substring(from, to);
+        }
+
+        // Each char encodes to at most 3 bytes (a surrogate pair to 4)
+        byte[] bytes = new byte[(to - from) * 3];
+        int n = 0;
+        for (int j = from; j < to; j++) {
+            char c = s.charAt(j);
+            if (c == '+') {
+                bytes[n++] = ' ';
+            } else if (c == '%' && j + 2 < to && hex(s.charAt(j + 1)) >= 0 && hex(s.charAt(j + 2)) >= 0) {
+                bytes[n++] = (byte) ((hex(s.charAt(j + 1)) << 4) | hex(s.charAt(j + 2)));
+                j += 2;
+            } else if (c < 0x80) {
+                bytes[n++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[n++] = (byte) (0xC0 | (c >> 6));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && j + 1 < to && Character.isLowSurrogate(s.charAt(j + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++j));
+                bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                bytes[n++] = (byte) (0xE0 | (c >> 12));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return new String(bytes, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
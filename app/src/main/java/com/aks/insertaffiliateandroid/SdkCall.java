@@ -0,0 +1,163 @@
+package com.aks.insertaffiliateandroid;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Handle for a pending SDK lookup.
+ *
+ * A call finishes exactly once: with its result, with null when its deadline passes, or
+ * silently when it is cancelled. After that the callback is released, so nothing it
+ * references (e.g. an Activity) is kept alive by the SDK.
+ */
+public final class SdkCall {
+    private static final Set<SdkCall> active = ConcurrentHashMap.newKeySet();
+
+    private final String name;
+    private final long startNanos = System.nanoTime();
+    private final AtomicReference<Consumer<Object>> callback;
+    private volatile ScheduledFuture<?> deadline;
+    private volatile Application.ActivityLifecycleCallbacks scopeCallbacks;
+    private volatile Application scopeApplication;
+    private volatile boolean cancelled = false;
+
+    @SuppressWarnings("unchecked")
+    private SdkCall(String name, Consumer<?> callback) {
+        this.name = name;
+        this.callback = new AtomicReference<>((Consumer<Object>) callback);
+    }
+
+    /**
+     * Starts tracking a call: arms its deadline and binds it to its scope, if any.
+     * Results must be delivered through {@link #complete(Object)}.
+     */
+    static <T> SdkCall start(String name, CallOptions options, Consumer<T> callback) {
+        SdkCall call = new SdkCall(name, callback);
+        active.add(call);
+        if (options.timeoutMillis > 0) {
+            call.deadline = SdkExecutors.scheduler().schedule(
+                    () -> SdkExecutors.deadlines().execute(call::expire), options.timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        Activity activity = options.scope != null ? options.scope.get() : null;
+        if (activity != null) {
+            call.bindTo(activity);
+        }
+        return call;
+    }
+
+    /**
+     * Delivers the result, unless the call already timed out or was cancelled.
+     */
+    void complete(Object result) {
+        Consumer<Object> target = callback.getAndSet(null);
+        if (target == null) {
+            return;
+        }
+        release();
+        target.accept(result);
+    }
+
+    /**
+     * Cancels the call: its callback will not be invoked.
+     * @return false if the call had already finished
+     */
+    public boolean cancel() {
+        if (callback.getAndSet(null) == null) {
+            return false;
+        }
+        cancelled = true;
+        release();
+        SdkLog.v("{} call cancelled", name);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Whether the call has finished, in any way.
+     */
+    public boolean isDone() {
+        return callback.get() == null;
+    }
+
+    /**
+     * Cancels every pending call.
+     */
+    static void cancelAll() {
+        for (SdkCall call : active) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Number of calls waiting for a result.
+     */
+    static int pendingCount() {
+        return active.size();
+    }
+
+    private void expire() {
+        Consumer<Object> target = callback.getAndSet(null);
+        if (target == null) {
+            return;
+        }
+        SdkMetrics.record(name, SdkMetrics.Outcome.TIMEOUT, 0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        release();
+        SdkLog.i("[Insert Affiliate] " + name + " call timed out");
+        target.accept(null);
+    }
+
+    private void release() {
+        active.remove(this);
+        ScheduledFuture<?> timer = deadline;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        Application application = scopeApplication;
+        Application.ActivityLifecycleCallbacks callbacks = scopeCallbacks;
+        if (application != null && callbacks != null) {
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+        }
+    }
+
+    private void bindTo(Activity scope) {
+        Application application = scope.getApplication();
+        if (application == null) {
+            return;
+        }
+        WeakReference<Activity> scopeRef = new WeakReference<>(scope);
+        Application.ActivityLifecycleCallbacks callbacks = new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+                if (activity == scopeRef.get()) {
+                    cancel();
+                }
+            }
+
+            @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) { }
+            @Override public void onActivityStarted(Activity activity) { }
+            @Override public void onActivityResumed(Activity activity) { }
+            @Override public void onActivityPaused(Activity activity) { }
+            @Override public void onActivityStopped(Activity activity) { }
+            @Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) { }
+        };
+        scopeApplication = application;
+        scopeCallbacks = callbacks;
+        application.registerActivityLifecycleCallbacks(callbacks);
+        if (isDone()) {
+            // Finished while we were registering
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+        }
+    }
+}
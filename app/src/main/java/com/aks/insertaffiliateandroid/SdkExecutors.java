@@ -0,0 +1,194 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the threads the SDK uses for network and disk work.
+ * Network and other background work goes through {@link #io()} so that the number of SDK
+ * threads stays bounded no matter how many API calls the host app makes. Local persistence and
+ * call deadlines each have their own single thread, so they never wait behind a slow request.
+ */
+final class SdkExecutors {
+    static final int DEFAULT_IO_PARALLELISM = 2;
+    private static final long IO_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Object lock = new Object();
+    private static volatile Executor hostExecutor;
+    private static volatile ThreadPoolExecutor ioExecutor;
+    private static volatile ScheduledExecutorService scheduler;
+    private static int ioParallelism = DEFAULT_IO_PARALLELISM;
+
+    private SdkExecutors() {
+    }
+
+    /**
+     * Returns the executor used for SDK I/O: the host supplied one if set, otherwise the
+     * shared SDK pool (created on first use).
+     */
+    static Executor io() {
+        Executor host = hostExecutor;
+        if (host != null) {
+            return host;
+        }
+        ThreadPoolExecutor executor = ioExecutor;
+        if (executor == null) {
+            synchronized (lock) {
+                executor = ioExecutor;
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(
+                            ioParallelism,
+                            ioParallelism,
+                            IO_KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            new NamedThreadFactory("InsertAffiliate-io"));
+                    // Idle SDK threads should not outlive the work they were created for
+                    executor.allowCoreThreadTimeOut(true);
+                    ioExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the timer used for delayed work such as retries. Scheduled tasks should only hand
+     * work over to {@link #io()}; nothing slow should run on the timer thread itself.
+     */
+    static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService timer = scheduler;
+        if (timer == null) {
+            synchronized (lock) {
+                timer = scheduler;
+                if (timer == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("InsertAffiliate-timer"));
+                    executor.setRemoveOnCancelPolicy(true);
+                    timer = executor;
+                    scheduler = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Routes all SDK I/O through the given executor instead of the SDK's own pool.
+     * Pass null to go back to the SDK pool.
+     */
+    static void setHostExecutor(Executor executor) {
+        hostExecutor = executor;
+    }
+
+    /**
+     * Sets the maximum number of threads in the SDK's own I/O pool.
+     */
+    static void setIoParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        synchronized (lock) {
+            ioParallelism = parallelism;
+            ThreadPoolExecutor executor = ioExecutor;
+            if (executor != null) {
+                // Keep core <= max at every step
+                if (parallelism > executor.getMaximumPoolSize()) {
+                    executor.setMaximumPoolSize(parallelism);
+                    executor.setCorePoolSize(parallelism);
+                } else {
+                    executor.setCorePoolSize(parallelism);
+                    executor.setMaximumPoolSize(parallelism);
+                }
+            }
+        }
+    }
+
+    /**
+     * Single thread for local persistence, so disk writes happen off the caller's thread, in
+     * the order they were requested, and never queue behind network calls on {@link #io()}.
+     * Not affected by {@link #setHostExecutor}.
+     */
+    static Executor disk() {
+        return DiskHolder.DISK;
+    }
+
+    private static final class DiskHolder {
+        static final Executor DISK = newSingleThreadExecutor("InsertAffiliate-disk");
+    }
+
+    /**
+     * Single thread that delivers call deadlines (timeout callbacks). It never runs network
+     * work, so a timeout fires on time even when every {@link #io()} worker is stuck in a
+     * hung request, and slow app callbacks stay off the timer thread.
+     */
+    static Executor deadlines() {
+        return DeadlineHolder.DEADLINES;
+    }
+
+    private static final class DeadlineHolder {
+        static final Executor DEADLINES = newSingleThreadExecutor("InsertAffiliate-deadline");
+    }
+
+    private static Executor newSingleThreadExecutor(String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IO_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs tasks one at a time, in order, on top of a shared executor.
+     */
+    static final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private Runnable active;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = tasks.poll()) != null) {
+                executor.execute(active);
+            }
+        }
+    }
+
+    static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.function.Supplier;
+
+/**
+ * Logging facade for the SDK.
+ *
+ * All SDK output goes through a pluggable {@link Sink} (Logcat by default). Verbose messages
+ * are only built when verbose logging is on: pass a constant, a "{}" template with arguments,
+ * or a Supplier, and guard anything that would box or concatenate with {@link #isVerbose()}.
+ */
+public final class SdkLog {
+    public static final String TAG = "InsertAffiliate TAG";
+
+    // Same values as android.util.Log priorities
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static final String VERBOSE_PREFIX = "[Insert Affiliate] [VERBOSE] ";
+
+    /**
+     * Receives every message the SDK logs.
+     */
+    public interface Sink {
+        void log(int priority, String tag, String message);
+    }
+
+    /**
+     * Discards everything.
+     */
+    public static final Sink NO_OP = (priority, tag, message) -> { };
+
+    private static volatile Sink defaultSink = NO_OP;
+    private static volatile Sink hostSink = null;
+    private static volatile Sink sink = NO_OP; // hostSink if set, otherwise defaultSink
+    private static volatile boolean verbose = false;
+
+    private SdkLog() {
+    }
+
+    /**
+     * Sends SDK logs to the given sink instead of Logcat.
+     * Pass {@link #NO_OP} to silence the SDK, or null to go back to Logcat.
+     */
+    public static void setSink(Sink newSink) {
+        hostSink = newSink;
+        sink = newSink != null ? newSink : defaultSink;
+    }
+
+    /**
+     * Sets the sink used when the host app has not chosen one (Logcat on device).
+     */
+    static void setDefaultSink(Sink newDefault) {
+        defaultSink = newDefault;
+        Sink host = hostSink;
+        sink = host != null ? host : newDefault;
+    }
+
+    static void setVerbose(boolean enabled) {
+        verbose = enabled;
+    }
+
+    /**
+     * Whether verbose messages are emitted. Check this before building any message that
+     * needs concatenation or boxing.
+     */
+    public static boolean isVerbose() {
+        return verbose && sink != NO_OP;
+    }
+
+    // MARK: Verbose
+    static void v(String message) {
+        if (isVerbose()) {
+            sink.log(INFO, TAG, VERBOSE_PREFIX + message);
+        }
+    }
+
+    static void v(String template, Object arg) {
+        if (isVerbose()) {
+            sink.log(INFO, TAG, VERBOSE_PREFIX + format(template, arg, null, null));
+        }
+    }
+
+    static void v(String template, Object arg1, Object arg2) {
+        if (isVerbose()) {
+            sink.log(INFO, TAG, VERBOSE_PREFIX + format(template, arg1, arg2, null));
+        }
+    }
+
+    static void v(String template, Object arg1, Object arg2, Object arg3) {
+        if (isVerbose()) {
+            sink.log(INFO, TAG, VERBOSE_PREFIX + format(template, arg1, arg2, arg3));
+        }
+    }
+
+    static void v(Supplier<String> message) {
+        if (isVerbose()) {
+            sink.log(INFO, TAG, VERBOSE_PREFIX + message.get());
+        }
+    }
+
+    // MARK: Always on
+    /**
+     * Logs an info message as-is (callers include the "[Insert Affiliate]" prefix).
+     */
+    static void i(String message) {
+        sink.log(INFO, TAG, message);
+    }
+
+    static void e(String message) {
+        sink.log(ERROR, TAG, message);
+    }
+
+    static void d(String message) {
+        sink.log(DEBUG, TAG, message);
+    }
+
+    /**
+     * Logs a debug message, formatting the template (and calling the argument's toString)
+     * only if a sink will receive it.
+     */
+    static void d(String template, Object arg) {
+        Sink current = sink;
+        if (current != NO_OP) {
+            current.log(DEBUG, TAG, format(template, arg, null, null));
+        }
+    }
+
+    /**
+     * Replaces up to three "{}" placeholders, in order, with the given arguments.
+     */
+    static String format(String template, Object arg1, Object arg2, Object arg3) {
+        StringBuilder builder = new StringBuilder(template.length() + 32);
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while ((placeholder = template.indexOf("{}", start)) >= 0 && argIndex < 3) {
+            builder.append(template, start, placeholder);
+            builder.append(argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3);
+            argIndex++;
+            start = placeholder + 2;
+        }
+        builder.append(template, start, template.length());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,281 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+
+import okhttp3.HttpUrl;
+
+/**
+ * In-process metrics for SDK network calls.
+ *
+ * Every HTTP request the SDK makes is recorded against its endpoint (e.g. "trackEvent",
+ * "checkAffiliateExists") with its outcome and its latency, in fixed histogram buckets.
+ * Queue depths (the event outbox, calls waiting for init, pending lookups) are sampled when a
+ * snapshot is taken. Recording is a few atomic increments, so it is always on.
+ *
+ * Read everything at once with {@link #snapshot()}, or forward each request to your own
+ * telemetry with {@link #setListener(Listener)}.
+ */
+public final class SdkMetrics {
+    // Upper bounds of the latency buckets; the last bucket is everything slower
+    static final long[] LATENCY_BUCKET_BOUNDS_MILLIS = {25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000};
+
+    static final int MAX_ENDPOINTS = 32; // Anything past this is recorded as "other"
+
+    public enum Outcome {
+        SUCCESS,   // HTTP 2xx
+        FAILURE,   // Any other HTTP status, or a network error
+        TIMEOUT,   // A network timeout; also lookups whose CallOptions deadline passed, under the lookup's name (e.g. "Offer code")
+        CANCELLED  // Cancelled by the app (e.g. cancelPendingCalls)
+    }
+
+    /**
+     * Told about every finished request, on the thread that finished it. Keep it cheap:
+     * hand the values to your own queue rather than doing I/O here.
+     */
+    public interface Listener {
+        void onRequest(String endpoint, Outcome outcome, int statusCode, long latencyMillis);
+    }
+
+    /**
+     * Counters and latency histogram for one endpoint.
+     */
+    public static final class EndpointStats {
+        public final String endpoint;
+        public final long successes;
+        public final long failures;
+        public final long timeouts;
+        public final long cancellations;
+        public final long totalLatencyMillis;
+        public final long maxLatencyMillis;
+        private final long[] buckets;
+
+        EndpointStats(String endpoint, long successes, long failures, long timeouts, long cancellations,
+                      long totalLatencyMillis, long maxLatencyMillis, long[] buckets) {
+            this.endpoint = endpoint;
+            this.successes = successes;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.cancellations = cancellations;
+            this.totalLatencyMillis = totalLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+            this.buckets = buckets;
+        }
+
+        public long count() {
+            return successes + failures + timeouts + cancellations;
+        }
+
+        /**
+         * Request count per latency bucket, one more entry than {@link #latencyBucketBoundsMillis()}.
+         */
+        public long[] latencyBuckets() {
+            return buckets.clone();
+        }
+
+        public long meanLatencyMillis() {
+            long count = count();
+            return count > 0 ? totalLatencyMillis / count : 0;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile (0-100); the max latency for
+         * the open-ended last bucket.
+         */
+        public long latencyPercentileMillis(double percentile) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(1, rank)) {
+                    return i < LATENCY_BUCKET_BOUNDS_MILLIS.length ? Math.min(LATENCY_BUCKET_BOUNDS_MILLIS[i], maxLatencyMillis) : maxLatencyMillis;
+                }
+            }
+            return maxLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + "{ok=" + successes + ", failed=" + failures + ", timeouts=" + timeouts
+                    + ", cancelled=" + cancellations + ", p50=" + latencyPercentileMillis(50)
+                    + "ms, p95=" + latencyPercentileMillis(95) + "ms, max=" + maxLatencyMillis + "ms}";
+        }
+    }
+
+    /**
+     * Point-in-time copy of every metric.
+     */
+    public static final class Snapshot {
+        public final Map<String, EndpointStats> endpoints;
+        public final Map<String, Integer> queueDepths;
+
+        Snapshot(Map<String, EndpointStats> endpoints, Map<String, Integer> queueDepths) {
+            this.endpoints = endpoints;
+            this.queueDepths = queueDepths;
+        }
+
+        /**
+         * Timeouts across all endpoints.
+         */
+        public long totalTimeouts() {
+            long total = 0;
+            for (EndpointStats stats : endpoints.values()) {
+                total += stats.timeouts;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return "SdkMetrics{endpoints=" + endpoints.values() + ", queues=" + queueDepths + "}";
+        }
+    }
+
+    private static final class Recorder {
+        final AtomicLong[] outcomes = new AtomicLong[Outcome.values().length];
+        final AtomicLong totalLatencyMillis = new AtomicLong();
+        final AtomicLong maxLatencyMillis = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKET_BOUNDS_MILLIS.length + 1);
+
+        Recorder() {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new AtomicLong();
+            }
+        }
+
+        void record(Outcome outcome, long latencyMillis) {
+            outcomes[outcome.ordinal()].incrementAndGet();
+            totalLatencyMillis.addAndGet(latencyMillis);
+            maxLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+            buckets.incrementAndGet(bucketOf(latencyMillis));
+        }
+
+        EndpointStats stats(String endpoint) {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new EndpointStats(endpoint,
+                    outcomes[Outcome.SUCCESS.ordinal()].get(),
+                    outcomes[Outcome.FAILURE.ordinal()].get(),
+                    outcomes[Outcome.TIMEOUT.ordinal()].get(),
+                    outcomes[Outcome.CANCELLED.ordinal()].get(),
+                    totalLatencyMillis.get(),
+                    maxLatencyMillis.get(),
+                    counts);
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, IntSupplier> queues = new ConcurrentHashMap<>();
+    private static volatile Listener listener;
+
+    private SdkMetrics() {
+    }
+
+    /**
+     * Upper bounds, in milliseconds, of the latency histogram buckets; a last, open-ended
+     * bucket holds everything slower.
+     */
+    public static long[] latencyBucketBoundsMillis() {
+        return LATENCY_BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * Sets the listener told about every request; null removes it.
+     */
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public static Snapshot snapshot() {
+        Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            endpoints.put(entry.getKey(), entry.getValue().stats(entry.getKey()));
+        }
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (Map.Entry<String, IntSupplier> entry : queues.entrySet()) {
+            try {
+                depths.put(entry.getKey(), entry.getValue().getAsInt());
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] Could not read " + entry.getKey() + " queue depth: " + e.getMessage());
+            }
+        }
+        return new Snapshot(Collections.unmodifiableMap(endpoints), Collections.unmodifiableMap(depths));
+    }
+
+    /**
+     * Clears every counter and histogram. Queue depths are live values and are kept.
+     */
+    public static void reset() {
+        recorders.clear();
+    }
+
+    /**
+     * Registers a queue whose depth is read on every snapshot; replaces any queue of that name.
+     */
+    static void registerQueue(String name, IntSupplier depth) {
+        queues.put(name, depth);
+    }
+
+    static void record(String endpoint, Outcome outcome, int statusCode, long latencyMillis) {
+        Recorder recorder = recorders.get(endpoint);
+        if (recorder == null) {
+            if (recorders.size() >= MAX_ENDPOINTS) {
+                endpoint = "other";
+            }
+            recorder = recorders.computeIfAbsent(endpoint, name -> new Recorder());
+        }
+        recorder.record(outcome, Math.max(0, latencyMillis));
+
+        Listener current = listener;
+        if (current != null) {
+            try {
+                current.onRequest(endpoint, outcome, statusCode, latencyMillis);
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] Error in metrics listener: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Endpoint name for a request URL: the path without its version prefix, cut before the
+     * first path parameter for endpoints that have them.
+     * "/V1/checkAffiliateExists" is "checkAffiliateExists";
+     * "/v1/affiliateReturnOfferCode/{company}/{link}" is "affiliateReturnOfferCode".
+     */
+    static String endpointOf(HttpUrl url) {
+        StringBuilder name = new StringBuilder();
+        for (String segment : url.pathSegments()) {
+            if (segment.isEmpty() || (name.length() == 0 && segment.equalsIgnoreCase("v1"))) {
+                continue;
+            }
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(segment);
+            if (segment.equals("affiliateReturnOfferCode")) {
+                break;
+            }
+        }
+        return name.length() > 0 ? name.toString() : url.host();
+    }
+
+    static int bucketOf(long latencyMillis) {
+        for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (latencyMillis <= LATENCY_BUCKET_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKET_BOUNDS_MILLIS.length;
+    }
+}
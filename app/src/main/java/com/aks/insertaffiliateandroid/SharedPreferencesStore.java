@@ -0,0 +1,45 @@
+package com.aks.insertaffiliateandroid;
+
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * {@link KeyValueStore} over SharedPreferences. Writes use commit(), which returns only once the
+ * file has been written and synced, so they must run on a background thread.
+ */
+final class SharedPreferencesStore implements KeyValueStore {
+    private final SharedPreferences preferences;
+
+    SharedPreferencesStore(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return preferences.getString(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        return preferences.getLong(key, defaultValue);
+    }
+
+    @Override
+    public boolean writeSync(Map<String, Object> values) {
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                editor.remove(entry.getKey());
+            } else if (value instanceof Long) {
+                editor.putLong(entry.getKey(), (Long) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else {
+                editor.putString(entry.getKey(), value.toString());
+            }
+        }
+        return editor.commit();
+    }
+}
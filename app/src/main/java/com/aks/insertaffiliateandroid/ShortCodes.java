@@ -0,0 +1,147 @@
+package com.aks.insertaffiliateandroid;
+
+/**
+ * Allocation-free validation and cleaning for short codes and offer codes.
+ * These replace per-call String.matches/replaceAll, which compile a new Pattern every time.
+ */
+final class ShortCodes {
+    static final int MIN_LENGTH = 3;
+    static final int MAX_LENGTH = 25;
+
+    private ShortCodes() {
+    }
+
+    /**
+     * Whether the value is 3-25 characters long and contains only ASCII letters and digits.
+     */
+    static boolean isShortCode(String value) {
+        if (value == null) {
+            return false;
+        }
+        int length = value.length();
+        return length >= MIN_LENGTH && length <= MAX_LENGTH && isAlphanumeric(value);
+    }
+
+    /**
+     * Whether every character is an ASCII letter or digit (true for an empty value).
+     */
+    static boolean isAlphanumeric(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!isAlphanumeric(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates a short code in a single scan and uppercases it. Nothing is allocated for an
+     * invalid code or one that is already uppercase.
+     * @return The uppercase short code (the same instance if it already was), or null if invalid
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        int length = value.length();
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return null;
+        }
+        int firstLower = -1;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (!isAlphanumeric(c)) {
+                return null;
+            }
+            if (firstLower < 0 && isLowerAscii(c)) {
+                firstLower = i;
+            }
+        }
+        if (firstLower < 0) {
+            return value;
+        }
+        char[] chars = value.toCharArray();
+        for (int i = firstLower; i < length; i++) {
+            if (isLowerAscii(chars[i])) {
+                chars[i] = (char) (chars[i] - ('a' - 'A'));
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Uppercases ASCII letters only, independent of the device locale.
+     * @return The same instance if there was nothing to change
+     */
+    static String toUpperAscii(String value) {
+        int length = value.length();
+        int firstLower = 0;
+        while (firstLower < length && !isLowerAscii(value.charAt(firstLower))) {
+            firstLower++;
+        }
+        if (firstLower == length) {
+            return value;
+        }
+        char[] chars = value.toCharArray();
+        for (int i = firstLower; i < length; i++) {
+            if (isLowerAscii(chars[i])) {
+                chars[i] = (char) (chars[i] - ('a' - 'A'));
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Removes everything except ASCII letters, digits, underscores and dashes.
+     * @return The same instance if it was already clean, "" for null
+     */
+    static String cleanOfferCode(String value) {
+        if (value == null) {
+            return "";
+        }
+        return keepOnly(value, true);
+    }
+
+    /**
+     * Removes everything except ASCII letters and digits.
+     * @return The same instance if it was already clean, "" for null
+     */
+    static String removeSpecialCharacters(String value) {
+        if (value == null) {
+            return "";
+        }
+        return keepOnly(value, false);
+    }
+
+    private static String keepOnly(String value, boolean allowUnderscoreAndDash) {
+        int length = value.length();
+        int firstRejected = 0;
+        while (firstRejected < length && isAllowed(value.charAt(firstRejected), allowUnderscoreAndDash)) {
+            firstRejected++;
+        }
+        if (firstRejected == length) {
+            return value;
+        }
+        StringBuilder cleaned = new StringBuilder(length - 1);
+        cleaned.append(value, 0, firstRejected);
+        for (int i = firstRejected + 1; i < length; i++) {
+            char c = value.charAt(i);
+            if (isAllowed(c, allowUnderscoreAndDash)) {
+                cleaned.append(c);
+            }
+        }
+        return cleaned.toString();
+    }
+
+    private static boolean isAllowed(char c, boolean allowUnderscoreAndDash) {
+        return isAlphanumeric(c) || (allowUnderscoreAndDash && (c == '_' || c == '-'));
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isLowerAscii(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+}
@@ -0,0 +1,261 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Small LRU cache for API lookups that merges concurrent requests for the same key.
+ *
+ * While a key is being loaded, further requests for it wait for that load instead of starting
+ * their own. Found values are kept for the TTL and then served stale, while a background
+ * refresh runs, for up to the stale window. "Not found" answers are kept for their own
+ * (usually shorter) TTL and never served stale. Failed loads are not cached.
+ *
+ * Every callback runs on the loader executor after get or reload has returned, cache hits
+ * included, so callers see the same threading whether or not the value was cached.
+ */
+final class SingleFlightCache<K, V> {
+
+    /**
+     * Outcome of one load.
+     */
+    static final class Loaded<V> {
+        private static final Loaded<?> NOT_FOUND = new Loaded<>(null, true);
+        private static final Loaded<?> FAILED = new Loaded<>(null, false);
+
+        final V value;
+        final boolean cacheable;
+
+        private Loaded(V value, boolean cacheable) {
+            this.value = value;
+            this.cacheable = cacheable;
+        }
+
+        static <V> Loaded<V> found(V value) {
+            return new Loaded<>(value, true);
+        }
+
+        /**
+         * A definite "no value" answer from the server, cached for the not-found TTL.
+         */
+        @SuppressWarnings("unchecked")
+        static <V> Loaded<V> notFound() {
+            return (Loaded<V>) NOT_FOUND;
+        }
+
+        /**
+         * A transient failure (network, 5xx); reported as null and not cached.
+         */
+        @SuppressWarnings("unchecked")
+        static <V> Loaded<V> failed() {
+            return (Loaded<V>) FAILED;
+        }
+
+        boolean isFound() {
+            return value != null;
+        }
+    }
+
+    /**
+     * Performs the actual lookup; runs on the loader executor.
+     */
+    interface Loader<K, V> {
+        Loaded<V> load(K key) throws Exception;
+    }
+
+    private static final class Entry<V> {
+        final V value; // null for a cached "not found"
+        final long freshUntil;
+        final long staleUntil;
+
+        Entry(V value, long freshUntil, long staleUntil) {
+            this.value = value;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+    }
+
+    private final String name;
+    private final int maxEntries;
+    private final Executor executor;
+    private final LongSupplier clock;
+
+    // Guarded by this
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<K, List<Consumer<V>>> inFlight = new HashMap<>();
+    private long ttlMillis;
+    private long notFoundTtlMillis;
+    private long staleMillis;
+    private int generation = 0;
+
+    SingleFlightCache(String name, int maxEntries, long ttlMillis, long notFoundTtlMillis, long staleMillis, Executor executor, LongSupplier clock) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.notFoundTtlMillis = notFoundTtlMillis;
+        this.staleMillis = staleMillis;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Delivers the value for the key (null if not found or the load failed) to the callback,
+     * from the cache when possible, otherwise by joining or starting a load.
+     */
+    void get(K key, Loader<K, V> loader, Consumer<V> callback) {
+        boolean hit = false;
+        V value = null;
+        boolean startLoad;
+        int loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+            long now = clock.getAsLong();
+            Entry<V> entry = entries.get(key);
+            if (entry != null && now < entry.staleUntil) {
+                hit = true;
+                value = entry.value;
+                // Stale: serve it and refresh in the background, unless a refresh is already running
+                startLoad = now >= entry.freshUntil && !inFlight.containsKey(key);
+                if (startLoad) {
+                    inFlight.put(key, new ArrayList<>());
+                }
+            } else {
+                if (entry != null) {
+                    entries.remove(key);
+                }
+                List<Consumer<V>> waiting = inFlight.get(key);
+                startLoad = waiting == null;
+                if (startLoad) {
+                    waiting = new ArrayList<>(2);
+                    inFlight.put(key, waiting);
+                }
+                waiting.add(callback);
+            }
+        }
+
+        if (hit) {
+            SdkLog.v(startLoad ? "{} cache hit (stale, refreshing): {}" : "{} cache hit: {}", name, key);
+            V hitValue = value;
+            executor.execute(() -> deliver(callback, hitValue));
+        }
+        if (startLoad) {
+            executor.execute(() -> load(key, loader, loadGeneration));
+        }
+    }
+
+    /**
+     * Always loads, for lookups that have side effects on the server, unless a fresh "not found"
+     * answer is cached. Does not join or get joined by other loads; the result still updates
+     * the cache.
+     */
+    void reload(K key, Loader<K, V> loader, Consumer<V> callback) {
+        boolean knownNotFound;
+        int loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+            Entry<V> entry = entries.get(key);
+            knownNotFound = entry != null && entry.value == null && clock.getAsLong() < entry.freshUntil;
+        }
+        if (knownNotFound) {
+            SdkLog.v("{} cache hit (not found): {}", name, key);
+            executor.execute(() -> deliver(callback, null));
+            return;
+        }
+        executor.execute(() -> {
+            Loaded<V> loaded = loadQuietly(key, loader);
+            synchronized (this) {
+                store(key, loaded, loadGeneration);
+            }
+            deliver(callback, loaded.value);
+        });
+    }
+
+    /**
+     * Sets the TTLs for values loaded from now on. A TTL of 0 turns caching of that kind of
+     * answer off; concurrent requests are still merged.
+     */
+    synchronized void setTtl(long ttlMillis, long notFoundTtlMillis, long staleMillis) {
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.notFoundTtlMillis = Math.max(0, notFoundTtlMillis);
+        this.staleMillis = Math.max(0, staleMillis);
+    }
+
+    /**
+     * Drops every cached value. Loads already running still complete their callbacks but
+     * their results are not cached.
+     */
+    synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void load(K key, Loader<K, V> loader, int loadGeneration) {
+        Loaded<V> loaded = loadQuietly(key, loader);
+
+        List<Consumer<V>> waiting;
+        synchronized (this) {
+            store(key, loaded, loadGeneration);
+            waiting = inFlight.remove(key);
+        }
+
+        if (waiting != null) {
+            for (Consumer<V> callback : waiting) {
+                deliver(callback, loaded.value);
+            }
+        }
+    }
+
+    private Loaded<V> loadQuietly(K key, Loader<K, V> loader) {
+        try {
+            Loaded<V> loaded = loader.load(key);
+            return loaded != null ? loaded : Loaded.failed();
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] " + name + " lookup failed: " + e.getMessage());
+            return Loaded.failed();
+        }
+    }
+
+    // Must hold this. A failed load leaves any stale entry in place until its window runs out.
+    private void store(K key, Loaded<V> loaded, int loadGeneration) {
+        if (!loaded.cacheable || loadGeneration != generation) {
+            return;
+        }
+        long ttl = loaded.isFound() ? ttlMillis : notFoundTtlMillis;
+        if (ttl <= 0) {
+            entries.remove(key);
+            return;
+        }
+        long now = clock.getAsLong();
+        long stale = loaded.isFound() ? staleMillis : 0;
+        entries.put(key, new Entry<>(loaded.value, now + ttl, now + ttl + stale));
+        trim();
+    }
+
+    // Must hold this
+    private void trim() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void deliver(Consumer<V> callback, V value) {
+        try {
+            callback.accept(value);
+        } catch (Exception e) {
+            SdkLog.e("[Insert Affiliate] Error in " + name + " callback: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks whether the SDK has finished initializing, and holds calls made while an
+ * asynchronous init is still running so they can be replayed, in order, once it is done.
+ *
+ * Calls are only held between {@link #begin()} and {@link #finish()}. Before any init they
+ * run straight away, as they always have, and fail with the usual "not initialized" errors.
+ * A deferred init ({@link #beginDeferred(Runnable)}) only starts its work when the first
+ * call is queued or someone asks for readiness.
+ */
+final class StartupGate {
+    static final int MAX_PENDING_CALLS = 100;
+
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    private CompletableFuture<Void> ready = new CompletableFuture<>();
+    private boolean initializing = false;
+    private Thread replayThread; // Runs queued calls; its own calls must not queue again
+    private Runnable deferredStart;
+
+    /**
+     * Marks the start of an asynchronous init.
+     * @return The future that completes when it finishes
+     */
+    synchronized CompletableFuture<Void> begin() {
+        if (ready.isDone()) {
+            ready = new CompletableFuture<>();
+        }
+        initializing = true;
+        return ready;
+    }
+
+    /**
+     * Like {@link #begin()}, but the init work (which must end by calling {@link #finish()}) is
+     * only started on first use.
+     */
+    synchronized CompletableFuture<Void> beginDeferred(Runnable start) {
+        CompletableFuture<Void> future = begin();
+        deferredStart = start;
+        return future;
+    }
+
+    /**
+     * Starts a deferred init, if one is waiting. Cheap when there is none.
+     */
+    void startDeferred() {
+        Runnable start;
+        synchronized (this) {
+            start = deferredStart;
+            deferredStart = null;
+        }
+        if (start != null) {
+            start.run();
+        }
+    }
+
+    /**
+     * Completes when the SDK has been initialized; already complete after a synchronous init.
+     * Starts a deferred init.
+     */
+    CompletableFuture<Void> ready() {
+        startDeferred();
+        synchronized (this) {
+            return ready;
+        }
+    }
+
+    /**
+     * Queues the call if an init is in progress.
+     * @return true if the call was queued (or dropped because the queue is full) and must not run now
+     */
+    boolean deferIfInitializing(String name, Runnable call) {
+        boolean queued;
+        synchronized (this) {
+            if (!initializing || Thread.currentThread() == replayThread) {
+                return false;
+            }
+            queued = pending.size() < MAX_PENDING_CALLS;
+            if (queued) {
+                pending.add(call);
+            }
+        }
+        startDeferred();
+        if (queued) {
+            SdkLog.v("{} queued until SDK initialization completes", name);
+            return true;
+        }
+        SdkLog.e("[Insert Affiliate] Too many calls made before SDK initialization completed, dropping " + name);
+        return true;
+    }
+
+    /**
+     * Marks init as done: replays queued calls on this thread, then completes the ready future.
+     * Calls made on other threads during the replay queue behind it, so the original order
+     * is kept.
+     */
+    void finish() {
+        synchronized (this) {
+            replayThread = Thread.currentThread();
+        }
+        while (true) {
+            Runnable call;
+            synchronized (this) {
+                call = pending.poll();
+                if (call == null) {
+                    initializing = false;
+                    replayThread = null;
+                    break;
+                }
+            }
+            try {
+                call.run();
+            } catch (Exception e) {
+                SdkLog.e("[Insert Affiliate] Error replaying queued call: " + e.getMessage());
+            }
+        }
+        CompletableFuture<Void> done;
+        synchronized (this) {
+            done = ready;
+        }
+        done.complete(null);
+    }
+
+    /**
+     * Whether an async or deferred init has begun and not finished, as seen from this thread
+     * (calls replayed by {@link #finish()} see it as finished).
+     */
+    synchronized boolean isInitializing() {
+        return initializing && Thread.currentThread() != replayThread;
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Drops queued calls and goes back to "not initialized".
+     */
+    synchronized void reset() {
+        if (!pending.isEmpty()) {
+            SdkLog.v("Dropping {} calls queued before SDK initialization", pending.size());
+            pending.clear();
+        }
+        initializing = false;
+        deferredStart = null;
+        if (ready.isDone()) {
+            ready = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.aks.insertaffiliateandroid;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs deferrable SDK uploads when sending is cheap for the device.
+ *
+ * Non-urgent traffic (onboarding and association reports, batched events, expected
+ * transactions) is handed to a scheduler instead of being sent the moment the API is called,
+ * so the radio wakes up fewer times. Lookups the app is waiting on (offer codes, affiliate
+ * details) never go through it.
+ */
+interface UploadScheduler {
+    /**
+     * A deferred upload.
+     */
+    interface Task {
+        /**
+         * Starts the upload.
+         * @return A future that completes once the upload has finished, successfully or not;
+         *         the scheduler may keep the device awake until then
+         */
+        CompletableFuture<?> run();
+    }
+
+    /**
+     * Runs the task once at least minDelayMillis have passed and the device is on an unmetered
+     * network or charging, and after maxDelayMillis at the latest. Replaces any task pending
+     * under the same name.
+     */
+    void schedule(String name, long minDelayMillis, long maxDelayMillis, Task task);
+}
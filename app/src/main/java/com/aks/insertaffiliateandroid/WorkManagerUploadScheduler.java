@@ -0,0 +1,118 @@
+package com.aks.insertaffiliateandroid;
+
+import android.content.Context;
+
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link UploadScheduler} backed by WorkManager, which tracks network and charging state for us
+ * and batches wake-ups with other apps' work.
+ *
+ * WorkManager constraints are all-of, so each task is enqueued as three unique works that race:
+ * one needing an unmetered network, one needing charging (and any network), and one needing
+ * any network after the max delay. The first to run takes the task and cancels the others.
+ * The worker blocks until the upload has finished, so it runs inside WorkManager's execution
+ * window, under its wakelock and while the constraint still holds.
+ *
+ * Tasks are in-memory callbacks. If WorkManager starts a fresh process the task is gone, and
+ * the work just finishes; SDK queues are durable and are drained at the next init anyway.
+ */
+final class WorkManagerUploadScheduler implements UploadScheduler {
+    static final String KEY_NAME = "name";
+    static final String KEY_VARIANT = "variant";
+    private static final String WORK_PREFIX = "insert_affiliate_upload_";
+    private static final String[] VARIANTS = {":unmetered", ":charging", ":deadline"};
+    // WorkManager stops a worker after 10 minutes; the SDK's own timeouts end uploads well before
+    private static final long MAX_RUN_MILLIS = TimeUnit.MINUTES.toMillis(9);
+
+    private static final ConcurrentHashMap<String, Task> tasks = new ConcurrentHashMap<>();
+
+    private final WorkManager workManager;
+
+    WorkManagerUploadScheduler(WorkManager workManager) {
+        this.workManager = workManager;
+    }
+
+    @Override
+    public void schedule(String name, long minDelayMillis, long maxDelayMillis, Task task) {
+        long minDelay = Math.max(0, minDelayMillis);
+        tasks.put(name, task);
+        enqueue(name, VARIANTS[0], minDelay, new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .build());
+        enqueue(name, VARIANTS[1], minDelay, new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresCharging(true)
+                .build());
+        enqueue(name, VARIANTS[2], Math.max(minDelay, maxDelayMillis), new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build());
+    }
+
+    private void enqueue(String name, String variant, long delayMillis, Constraints constraints) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(UploadWorker.class)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder().putString(KEY_NAME, name).putString(KEY_VARIANT, variant).build())
+                .build();
+        workManager.enqueueUniqueWork(WORK_PREFIX + name + variant, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    // Blocks the worker thread until the upload has finished
+    private static void run(WorkManager workManager, String name, String ranVariant) {
+        Task task = tasks.remove(name);
+        for (String variant : VARIANTS) {
+            if (!variant.equals(ranVariant)) {
+                workManager.cancelUniqueWork(WORK_PREFIX + name + variant);
+            }
+        }
+        if (task == null) {
+            SdkLog.v("Scheduled upload {} already ran or was lost with its process", name);
+            return;
+        }
+        try {
+            CompletableFuture<?> done = task.run();
+            if (done != null) {
+                done.get(MAX_RUN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            // Stopped by WorkManager; the queue is durable and drains again later
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            SdkLog.e("[Insert Affiliate] Scheduled upload " + name + " did not finish in time");
+        } catch (ExecutionException | RuntimeException e) {
+            SdkLog.e("[Insert Affiliate] Error running scheduled upload " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a scheduled upload. Instantiated by WorkManager.
+     */
+    public static final class UploadWorker extends Worker {
+        public UploadWorker(Context context, WorkerParameters params) {
+            super(context, params);
+        }
+
+        @Override
+        public Result doWork() {
+            String name = getInputData().getString(KEY_NAME);
+            if (name != null) {
+                run(WorkManager.getInstance(getApplicationContext()), name, getInputData().getString(KEY_VARIANT));
+            }
+            return Result.success();
+        }
+    }
+}
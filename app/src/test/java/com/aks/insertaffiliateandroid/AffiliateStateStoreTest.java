@@ -0,0 +1,101 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class AffiliateStateStoreTest {
+
+    /** In-memory stand-in for SharedPreferences */
+    static final class FakeKeyValueStore implements KeyValueStore {
+        final Map<String, Object> values = new HashMap<>();
+        int writes = 0;
+
+        @Override
+        public String getString(String key, String defaultValue) {
+            Object value = values.get(key);
+            return value != null ? (String) value : defaultValue;
+        }
+
+        @Override
+        public long getLong(String key, long defaultValue) {
+            Object value = values.get(key);
+            return value != null ? (Long) value : defaultValue;
+        }
+
+        @Override
+        public boolean writeSync(Map<String, Object> newValues) {
+            writes++;
+            values.putAll(newValues);
+            return true;
+        }
+    }
+
+    /** Executor that only runs tasks when told to, standing in for the background disk thread */
+    static final class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void writesAreVisibleBeforeTheyReachDisk() {
+        FakeKeyValueStore backing = new FakeKeyValueStore();
+        ManualExecutor disk = new ManualExecutor();
+        AffiliateStateStore store = new AffiliateStateStore(backing, disk);
+
+        store.updateDeviceId("abc123");
+        store.updateReferringLink("SAVE20", 1_700_000_000L);
+
+        assertEquals("SAVE20-abc123", store.current().identifier());
+        assertEquals(0, backing.writes);
+
+        disk.runAll();
+        assertEquals(2, backing.writes);
+        assertEquals("SAVE20", backing.values.get(AffiliateStateStore.KEY_REFERRING_LINK));
+        assertEquals(1_700_000_000L, backing.values.get(AffiliateStateStore.KEY_STORED_DATE));
+    }
+
+    @Test
+    public void stateIsReloadedFromTheBackingStore() {
+        FakeKeyValueStore backing = new FakeKeyValueStore();
+        ManualExecutor disk = new ManualExecutor();
+        AffiliateStateStore store = new AffiliateStateStore(backing, disk);
+        store.updateDeviceId("abc123");
+        store.updateReferringLink("SAVE20", 1_700_000_000L);
+        store.updateOfferCode("-oneweekfree");
+        disk.runAll();
+
+        AffiliateState reloaded = new AffiliateStateStore(backing, disk).current();
+        assertEquals("SAVE20", reloaded.referringLink);
+        assertEquals("abc123", reloaded.deviceId);
+        assertEquals(1_700_000_000L, reloaded.storedDateSeconds);
+        assertEquals("-oneweekfree", reloaded.offerCode);
+    }
+
+    @Test
+    public void clearingTheOfferCodeStoresAnEmptyValue() {
+        FakeKeyValueStore backing = new FakeKeyValueStore();
+        AffiliateStateStore store = new AffiliateStateStore(backing, Runnable::run);
+        store.updateOfferCode("-oneweekfree");
+        store.updateOfferCode(null);
+
+        assertNull(store.current().offerCode);
+        assertEquals("", backing.values.get(AffiliateStateStore.KEY_OFFER_CODE));
+    }
+}
@@ -0,0 +1,73 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AssociationDedupeStoreTest {
+    private static final long TTL = 1_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(10_000);
+
+    private AssociationDedupeStore newStore(File file, int maxEntries) {
+        return new AssociationDedupeStore(file, maxEntries, TTL, Runnable::run, now::get);
+    }
+
+    @Test
+    public void reportedIdentifiersSurviveAReload() {
+        File file = new File(folder.getRoot(), "associations.bin");
+        AssociationDedupeStore store = newStore(file, 10);
+        assertFalse(store.contains("SAVE20-abc123"));
+        store.add("SAVE20-abc123");
+        assertTrue(store.contains("SAVE20-abc123"));
+
+        AssociationDedupeStore reloaded = newStore(file, 10);
+        assertTrue(reloaded.contains("SAVE20-abc123"));
+        assertFalse(reloaded.contains("OTHER-abc123"));
+    }
+
+    @Test
+    public void leastRecentlySeenIdentifierIsEvicted() {
+        AssociationDedupeStore store = newStore(new File(folder.getRoot(), "associations.bin"), 2);
+        store.add("A-1");
+        store.add("B-1");
+        assertTrue(store.contains("A-1")); // A is now more recent than B
+        store.add("C-1");
+
+        assertEquals(2, store.size());
+        assertTrue(store.contains("A-1"));
+        assertFalse(store.contains("B-1"));
+        assertTrue(store.contains("C-1"));
+    }
+
+    @Test
+    public void expiredIdentifiersAreReportedAgain() {
+        AssociationDedupeStore store = newStore(new File(folder.getRoot(), "associations.bin"), 10);
+        store.add("SAVE20-abc123");
+        now.addAndGet(TTL + 1);
+        assertFalse(store.contains("SAVE20-abc123"));
+    }
+
+    @Test
+    public void legacyIdentifiersCanBeImported() {
+        AssociationDedupeStore store = newStore(new File(folder.getRoot(), "associations.bin"), 10);
+        store.addAll(Arrays.asList("A-1", "B-1"));
+        assertTrue(store.contains("A-1"));
+        assertTrue(store.contains("B-1"));
+    }
+
+    @Test
+    public void fingerprintsDistinguishSimilarIdentifiers() {
+        assertNotEquals(AssociationDedupeStore.fingerprint("SAVE20-abc123"), AssociationDedupeStore.fingerprint("SAVE21-abc123"));
+        assertEquals(AssociationDedupeStore.fingerprint("SAVE20-abc123"), AssociationDedupeStore.fingerprint("SAVE20-abc123"));
+    }
+}
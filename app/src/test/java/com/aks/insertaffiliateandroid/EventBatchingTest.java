@@ -0,0 +1,178 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class EventBatchingTest {
+    private static final int EVENT_COUNT = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Executor direct = Runnable::run;
+    private MockWebServer server;
+    private ScheduledExecutorService scheduler;
+    private EventUploader uploader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+        }
+        server.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        Api api = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(Api.class);
+        uploader = new EventUploader(() -> api);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.shutdown();
+    }
+
+    @Test
+    public void unbatchedEventsSendOneRequestEach() throws Exception {
+        Outbox outbox = new Outbox("Test", new File(folder.getRoot(), "events.outbox"), 100, uploader, direct, scheduler, direct);
+        trackEvents(outbox);
+
+        assertEquals(EVENT_COUNT, server.getRequestCount());
+        assertEquals("/v1/trackEvent", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void batchedEventsShareOneRequest() throws Exception {
+        Outbox outbox = new Outbox("Test", new File(folder.getRoot(), "events.outbox"), 100, uploader, direct, scheduler, direct);
+        outbox.setBatching(uploader, EVENT_COUNT, 60_000);
+        trackEvents(outbox);
+
+        assertEquals(1, server.getRequestCount());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/v1/trackEvents", request.getPath());
+        JsonArray events = JsonParser.parseString(request.getBody().readUtf8()).getAsJsonArray();
+        assertEquals(EVENT_COUNT, events.size());
+        assertEquals("event0", events.get(0).getAsJsonObject().get("eventName").getAsString());
+    }
+
+    @Test
+    public void flushSendsAPartialBatch() throws Exception {
+        Outbox outbox = new Outbox("Test", new File(folder.getRoot(), "events.outbox"), 100, uploader, direct, scheduler, direct);
+        outbox.setBatching(uploader, 50, 60_000);
+        trackEvents(outbox);
+        assertEquals(0, server.getRequestCount());
+
+        outbox.flush();
+        assertEquals(1, server.getRequestCount());
+        assertTrue(outbox.pendingEntries().isEmpty());
+    }
+
+    @Test
+    public void missingBatchRouteFallsBackToSingleEvents() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(request.getPath().equals("/v1/trackEvents") ? 404 : 200).setBody("{}");
+            }
+        });
+        Outbox outbox = new Outbox("Test", new File(folder.getRoot(), "events.outbox"), 100, uploader, direct, scheduler, direct);
+        outbox.setBatching(uploader, EVENT_COUNT, 60_000);
+        trackEvents(outbox);
+
+        assertTrue(outbox.pendingEntries().isEmpty());
+        assertEquals(1 + EVENT_COUNT, server.getRequestCount());
+        assertEquals("/v1/trackEvents", server.takeRequest().getPath());
+        assertEquals("/v1/trackEvent", server.takeRequest().getPath());
+
+        // Later batches go straight to the single-event route
+        trackEvents(outbox);
+        assertTrue(outbox.pendingEntries().isEmpty());
+        assertEquals(1 + 2 * EVENT_COUNT, server.getRequestCount());
+    }
+
+    @Test
+    public void rejectedBatchIsResentOneEventAtATime() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().equals("/v1/trackEvents")) {
+                    return new MockResponse().setResponseCode(400).setBody("{}");
+                }
+                // The backend rejects only this one event
+                boolean bad = request.getBody().readUtf8().contains("\"event3\"");
+                return new MockResponse().setResponseCode(bad ? 400 : 200).setBody("{}");
+            }
+        });
+        Outbox outbox = new Outbox("Test", new File(folder.getRoot(), "events.outbox"), 100, uploader, direct, scheduler, direct);
+        outbox.setBatching(uploader, EVENT_COUNT, 60_000);
+        List<Outbox.Result> results = new ArrayList<>();
+        outbox.setCompletionListener((entry, result) -> results.add(result));
+        trackEvents(outbox);
+
+        assertTrue(outbox.pendingEntries().isEmpty());
+        assertEquals(1 + EVENT_COUNT, server.getRequestCount());
+        assertEquals(EVENT_COUNT - 1, Collections.frequency(results, Outbox.Result.DELIVERED));
+        assertEquals(Outbox.Result.DROP, results.get(3));
+
+        // A rejection does not mean the route is missing; the next batch tries it again
+        trackEvents(outbox);
+        assertEquals(2 + 2 * EVENT_COUNT, server.getRequestCount());
+    }
+
+    @Test
+    public void unreadablePayloadIsDroppedWithoutHoldingUpTheBatch() throws Exception {
+        Outbox outbox = new Outbox("Test", new File(folder.getRoot(), "events.outbox"), 100, uploader, direct, scheduler, direct);
+        outbox.setBatching(uploader, 3, 60_000);
+        List<Outbox.Result> results = new ArrayList<>();
+        outbox.enqueue("{\"eventName\":\"first\"}", (entry, result) -> results.add(result));
+        outbox.enqueue("{\"eventName\":\"trunc", (entry, result) -> results.add(result));
+        outbox.enqueue("{\"eventName\":\"third\"}", (entry, result) -> results.add(result));
+
+        assertTrue(outbox.pendingEntries().isEmpty());
+        assertEquals(Arrays.asList(Outbox.Result.DELIVERED, Outbox.Result.DROP, Outbox.Result.DELIVERED), results);
+        // The bad entry never reaches the server
+        assertEquals(2, server.getRequestCount());
+        assertEquals("{\"eventName\":\"first\"}", server.takeRequest().getBody().readUtf8());
+        assertEquals("{\"eventName\":\"third\"}", server.takeRequest().getBody().readUtf8());
+    }
+
+    private static void trackEvents(Outbox outbox) {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            JsonObject event = new JsonObject();
+            event.addProperty("eventName", "event" + i);
+            event.addProperty("companyId", "company");
+            event.addProperty("deepLinkParam", "SHORTCODE-abc123");
+            outbox.enqueue(event.toString());
+        }
+    }
+}
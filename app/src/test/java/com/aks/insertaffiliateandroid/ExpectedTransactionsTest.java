@@ -0,0 +1,102 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static com.aks.insertaffiliateandroid.InsertAffiliateManager.TransactionDeliveryState.*;
+import static org.junit.Assert.*;
+
+public class ExpectedTransactionsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Executor direct = Runnable::run;
+    private final OkHttpClient client = new OkHttpClient();
+    private final List<String> states = new ArrayList<>();
+    private MockWebServer server;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.shutdown();
+    }
+
+    private ExpectedTransactions newTransactions() {
+        ExpectedTransactions transactions = new ExpectedTransactions(folder.getRoot(), server.url("/create-expected-transaction").toString(),
+                () -> client, direct, scheduler, direct, System::currentTimeMillis);
+        transactions.setListener((token, state) -> states.add(token + ":" + state));
+        return transactions;
+    }
+
+    @Test
+    public void repeatedTokenIsDeliveredOnce() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        ExpectedTransactions transactions = newTransactions();
+
+        transactions.store("token-a", Payloads.expectedTransaction("token-a", "company", "SAVE20", "2026-10-17T09:30:00Z"));
+        transactions.store("token-a", Payloads.expectedTransaction("token-a", "company", "SAVE20", "2026-10-17T09:31:00Z"));
+        // A new process remembers the token too
+        newTransactions().store("token-a", "{}");
+
+        assertEquals(1, server.getRequestCount());
+        JsonObject body = JsonParser.parseString(server.takeRequest().getBody().readUtf8()).getAsJsonObject();
+        assertEquals("token-a", body.get("UUID").getAsString());
+        assertEquals(Arrays.asList("token-a:" + QUEUED, "token-a:" + DELIVERED, "token-a:" + DUPLICATE, "token-a:" + DUPLICATE), states);
+    }
+
+    @Test
+    public void failedTransactionIsDeliveredAfterRestart() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        ExpectedTransactions offline = newTransactions();
+        offline.store("token-b", Payloads.expectedTransaction("token-b", "company", "SAVE20", "2026-10-17T09:30:00Z"));
+        assertEquals(1, offline.size());
+
+        // Still queued, so storing it again does not add a second entry
+        offline.store("token-b", "{}");
+        assertEquals(1, offline.size());
+
+        server.enqueue(new MockResponse().setResponseCode(200));
+        ExpectedTransactions restarted = newTransactions();
+        restarted.drain();
+
+        assertEquals(0, restarted.size());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(Arrays.asList("token-b:" + QUEUED, "token-b:" + RETRYING, "token-b:" + DUPLICATE, "token-b:" + DELIVERED), states);
+    }
+
+    @Test
+    public void rejectedTransactionFails() {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("bad request"));
+        ExpectedTransactions transactions = newTransactions();
+
+        transactions.store("token-c", "{}");
+
+        assertEquals(0, transactions.size());
+        assertEquals(Arrays.asList("token-c:" + QUEUED, "token-c:" + FAILED), states);
+    }
+}
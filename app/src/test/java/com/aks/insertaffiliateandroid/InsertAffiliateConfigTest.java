@@ -0,0 +1,46 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InsertAffiliateConfigTest {
+    @Test
+    public void builderDefaultsMatchTheMinimalInit() {
+        InsertAffiliateConfig config = new InsertAffiliateConfig.Builder("COMPANY").build();
+
+        assertEquals("COMPANY", config.getCompanyCode());
+        assertTrue(config.hasCompanyCode());
+        assertFalse(config.isVerboseLogging());
+        assertFalse(config.isInsertLinksEnabled());
+        assertEquals(0, config.getAffiliateAttributionActiveTimeSeconds());
+        assertFalse(config.isPreventAffiliateTransfer());
+    }
+
+    @Test
+    public void toBuilderCopiesEverySettingWithoutChangingTheOriginal() {
+        InsertAffiliateConfig original = new InsertAffiliateConfig.Builder("COMPANY")
+                .setVerboseLogging(true)
+                .setInsertLinks(true)
+                .setAffiliateAttributionActiveTimeSeconds(604800)
+                .setPreventAffiliateTransfer(true)
+                .build();
+
+        InsertAffiliateConfig changed = original.toBuilder().setVerboseLogging(false).build();
+
+        assertTrue(original.isVerboseLogging());
+        assertFalse(changed.isVerboseLogging());
+        assertEquals("COMPANY", changed.getCompanyCode());
+        assertTrue(changed.isInsertLinksEnabled());
+        assertEquals(604800, changed.getAffiliateAttributionActiveTimeSeconds());
+        assertTrue(changed.isPreventAffiliateTransfer());
+    }
+
+    @Test
+    public void unconfiguredHasNoCompanyCodeAndNegativeTimeoutMeansNone() {
+        assertFalse(InsertAffiliateConfig.UNCONFIGURED.hasCompanyCode());
+        assertFalse(new InsertAffiliateConfig.Builder("").build().hasCompanyCode());
+        assertEquals(0, new InsertAffiliateConfig.Builder("COMPANY")
+                .setAffiliateAttributionActiveTimeSeconds(-5).build().getAffiliateAttributionActiveTimeSeconds());
+    }
+}
@@ -0,0 +1,148 @@
+package com.aks.insertaffiliateandroid;
+
+import com.android.installreferrer.api.InstallReferrerClient.InstallReferrerResponse;
+import com.android.installreferrer.api.InstallReferrerStateListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InstallReferrerCaptureTest {
+    private final AffiliateStateStoreTest.FakeKeyValueStore store = new AffiliateStateStoreTest.FakeKeyValueStore();
+    private final Executor direct = Runnable::run;
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    private ScheduledExecutorService scheduler;
+
+    /** Answers each start() with the next queued response code */
+    private final ArrayDeque<Integer> responses = new ArrayDeque<>();
+    private String referrer = "utm_source=google-play&insertAffiliate=SAVE20";
+    private volatile int started = 0;
+    private volatile int ended = 0;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private InstallReferrerCapture capture() {
+        return new InstallReferrerCapture(store, () -> new InstallReferrerCapture.Connection() {
+            @Override
+            public void start(InstallReferrerStateListener listener) {
+                started++;
+                listener.onInstallReferrerSetupFinished(responses.isEmpty() ? InstallReferrerResponse.OK : responses.poll());
+            }
+
+            @Override
+            public String getInstallReferrer() {
+                return referrer;
+            }
+
+            @Override
+            public void end() {
+                ended++;
+            }
+        }, direct, scheduler, 1);
+    }
+
+    @Test
+    public void referrerIsFetchedOnceAndPersisted() {
+        capture().capture(delivered::add, delivered::contains);
+        assertEquals(Collections.singletonList(referrer), delivered);
+        assertEquals(InstallReferrerCapture.STATUS_CAPTURED, store.getString(InstallReferrerCapture.KEY_STATUS, null));
+        assertEquals(referrer, store.getString(InstallReferrerCapture.KEY_REFERRER, null));
+
+        // A later app start finds the stored outcome and makes no connection
+        InstallReferrerCapture next = capture();
+        next.capture(delivered::add, delivered::contains);
+        assertEquals(1, started);
+        assertEquals(1, ended);
+        assertEquals(1, delivered.size());
+        assertEquals(referrer, next.storedReferrer());
+    }
+
+    @Test
+    public void capturedReferrerIsHandedOnAgainIfTheProcessDiedBeforeHandlingIt() {
+        // The first process persisted the referrer, then died before its handler stored anything
+        capture().capture(value -> { }, value -> false);
+        assertEquals(InstallReferrerCapture.STATUS_CAPTURED, store.getString(InstallReferrerCapture.KEY_STATUS, null));
+
+        capture().capture(delivered::add, delivered::contains);
+        assertEquals(Collections.singletonList(referrer), delivered);
+        assertEquals(1, started);
+
+        // Handled now, so the next start leaves it alone
+        capture().capture(delivered::add, delivered::contains);
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void emptyReferrerIsStoredAsNone() {
+        referrer = "";
+        capture().capture(delivered::add, delivered::contains);
+        capture().capture(delivered::add, delivered::contains);
+
+        assertEquals(InstallReferrerCapture.STATUS_NONE, store.getString(InstallReferrerCapture.KEY_STATUS, null));
+        assertTrue(delivered.isEmpty());
+        assertEquals(1, started);
+    }
+
+    @Test
+    public void unsupportedIsStoredAndConnectionEnded() {
+        responses.add(InstallReferrerResponse.FEATURE_NOT_SUPPORTED);
+        capture().capture(delivered::add, delivered::contains);
+
+        assertEquals(InstallReferrerCapture.STATUS_UNSUPPORTED, store.getString(InstallReferrerCapture.KEY_STATUS, null));
+        assertEquals(1, ended);
+    }
+
+    @Test
+    public void serviceUnavailableIsRetriedUntilItSucceeds() throws InterruptedException {
+        responses.add(InstallReferrerResponse.SERVICE_UNAVAILABLE);
+        responses.add(InstallReferrerResponse.SERVICE_DISCONNECTED);
+        CountDownLatch done = new CountDownLatch(1);
+        capture().capture(value -> {
+            delivered.add(value);
+            done.countDown();
+        }, delivered::contains);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, started);
+        assertEquals(3, ended);
+        assertEquals(InstallReferrerCapture.STATUS_CAPTURED, store.getString(InstallReferrerCapture.KEY_STATUS, null));
+    }
+
+    @Test
+    public void nothingIsStoredWhenEveryAttemptFails() throws InterruptedException {
+        for (int i = 0; i < InstallReferrerCapture.MAX_ATTEMPTS; i++) {
+            responses.add(InstallReferrerResponse.SERVICE_UNAVAILABLE);
+        }
+        capture().capture(delivered::add, delivered::contains);
+
+        // The last attempt runs on the scheduler thread; wait for it to release its connection
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (ended < InstallReferrerCapture.MAX_ATTEMPTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(InstallReferrerCapture.MAX_ATTEMPTS, started);
+        assertEquals(InstallReferrerCapture.MAX_ATTEMPTS, ended);
+        assertNull(store.getString(InstallReferrerCapture.KEY_STATUS, null));
+        assertTrue(delivered.isEmpty());
+    }
+}
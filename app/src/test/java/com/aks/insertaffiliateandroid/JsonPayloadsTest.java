@@ -0,0 +1,81 @@
+package com.aks.insertaffiliateandroid;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class JsonPayloadsTest {
+
+    @Test
+    public void trackEventMatchesJsonObject() {
+        JsonObject expected = new JsonObject();
+        expected.addProperty("eventName", "purchase \"started\"");
+        expected.addProperty("companyId", "company");
+        expected.addProperty("deepLinkParam", "SAVE20-é😀 ");
+
+        assertEquals(expected.toString(), Payloads.trackEvent("purchase \"started\"", "company", "SAVE20-é😀 "));
+    }
+
+    @Test
+    public void nullFieldsAreLeftOut() {
+        assertEquals("{\"companyCode\":\"company\",\"shortCode\":\"SAVE20\",\"storedDate\":\"2026-10-17T09:30:00Z\"}",
+                Payloads.expectedTransaction(null, "company", "SAVE20", "2026-10-17T09:30:00Z"));
+    }
+
+    @Test
+    public void bodyStreamsUtf8WithContentLength() throws Exception {
+        RequestBody body = JsonBody.of(Payloads.affiliateAssociated("company", "SAVE20-é😀", "referring_link", "now"));
+        String expected = Payloads.toJson(Payloads.affiliateAssociated("company", "SAVE20-é😀", "referring_link", "now"));
+
+        // Written twice, as on a retried request
+        for (int i = 0; i < 2; i++) {
+            Buffer sent = new Buffer();
+            body.writeTo(sent);
+            assertEquals(expected, sent.readUtf8());
+        }
+        assertEquals(expected.getBytes("UTF-8").length, body.contentLength());
+        assertEquals("SAVE20-é😀", JsonParser.parseString(expected).getAsJsonObject().get("affiliateIdentifier").getAsString());
+    }
+
+    @Test
+    public void trackUsageOnlySentWhenTrue() {
+        assertEquals("{\"companyId\":\"c\",\"affiliateCode\":\"SAVE20\",\"trackUsage\":true}",
+                Payloads.toJson(Payloads.checkAffiliateExists("c", "SAVE20", true)));
+        assertEquals("{\"companyId\":\"c\",\"affiliateCode\":\"SAVE20\"}",
+                Payloads.toJson(Payloads.checkAffiliateExists("c", "SAVE20", false)));
+    }
+
+    @Test
+    public void readsAffiliateDetailsInAnyOrder() throws Exception {
+        InsertAffiliateManager.AffiliateDetails details = JsonResponses.affiliateDetails(new StringReader(
+                "{\"affiliate\":{\"id\":7,\"affiliateName\":\"Jo\",\"tags\":[1,{\"a\":null}],\"deeplinkurl\":\"https://x\"},\"exists\":true}"),
+                "SAVE20");
+
+        assertNotNull(details);
+        assertEquals("Jo", details.getAffiliateName());
+        assertEquals("SAVE20", details.getAffiliateShortCode()); // Missing, so the default
+        assertEquals("https://x", details.getDeeplinkUrl());
+    }
+
+    @Test
+    public void affiliateThatDoesNotExistIsNull() throws Exception {
+        assertNull(JsonResponses.affiliateDetails(new StringReader("{\"exists\":false,\"affiliate\":{\"affiliateName\":\"Jo\"}}"), "SAVE20"));
+        assertNull(JsonResponses.affiliateDetails(new StringReader("{\"exists\":true}"), "SAVE20"));
+    }
+
+    @Test
+    public void readsShortLink() throws Exception {
+        assertEquals("https://insertaffiliate.link/c/SAVE20",
+                JsonResponses.shortLink(new StringReader("{\"meta\":{\"x\":[1,2]},\"shortLink\":\"https://insertaffiliate.link/c/SAVE20\"}")));
+        assertEquals("", JsonResponses.shortLink(new StringReader("{\"shortLink\":null}")));
+        assertEquals("", JsonResponses.shortLink(new StringReader("{}")));
+    }
+}
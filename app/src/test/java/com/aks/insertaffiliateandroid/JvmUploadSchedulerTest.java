@@ -0,0 +1,90 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JvmUploadSchedulerTest {
+    private final AtomicBoolean unmeteredOrCharging = new AtomicBoolean(false);
+    private ScheduledExecutorService executor;
+    private JvmUploadScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        scheduler = new JvmUploadScheduler(executor, unmeteredOrCharging::get, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static UploadScheduler.Task task(Runnable upload) {
+        return () -> {
+            upload.run();
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    @Test
+    public void runsRightAwayWhenConditionsAreMet() {
+        unmeteredOrCharging.set(true);
+        AtomicInteger runs = new AtomicInteger();
+
+        scheduler.schedule("upload", 0, TimeUnit.HOURS.toMillis(1), task(runs::incrementAndGet));
+
+        assertEquals(1, runs.get());
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    public void waitsForMaxDelayWhenConditionsAreNotMet() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        scheduler.schedule("upload", 0, 200, task(ran::countDown));
+
+        assertEquals(1, scheduler.pendingCount());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void runsWaitingTaskWhenConditionsChange() {
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.schedule("upload", 0, TimeUnit.HOURS.toMillis(1), task(runs::incrementAndGet));
+        assertEquals(0, runs.get());
+
+        unmeteredOrCharging.set(true);
+        scheduler.conditionsChanged();
+
+        assertEquals(1, runs.get());
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    public void newTaskReplacesPendingOneWithSameName() {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        scheduler.schedule("upload", 0, TimeUnit.HOURS.toMillis(1), task(first::incrementAndGet));
+        scheduler.schedule("upload", 0, TimeUnit.HOURS.toMillis(1), task(second::incrementAndGet));
+        assertEquals(1, scheduler.pendingCount());
+
+        unmeteredOrCharging.set(true);
+        scheduler.conditionsChanged();
+
+        assertEquals(0, first.get());
+        assertEquals(1, second.get());
+    }
+}
@@ -0,0 +1,120 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class OnboardingTelemetryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Executor direct = Runnable::run;
+    private final OkHttpClient client = new OkHttpClient();
+    private final AffiliateStateStoreTest.FakeKeyValueStore store = new AffiliateStateStoreTest.FakeKeyValueStore();
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(20_000) + TimeUnit.HOURS.toMillis(9));
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    private MockWebServer server;
+    private ScheduledExecutorService scheduler;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        file = new File(folder.getRoot(), "onboarding.outbox");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.shutdown();
+    }
+
+    private OnboardingTelemetry telemetry() {
+        return new OnboardingTelemetry(file, server.url("/").toString(), () -> client, store, direct, scheduler, direct,
+                new JvmUploadScheduler(scheduler, () -> true, JvmUploadScheduler.DEFAULT_POLL_MILLIS), now::get, delivered::add);
+    }
+
+    @Test
+    public void reportsWaitUntilStartupIsOver() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        OnboardingTelemetry telemetry = telemetry();
+        telemetry.start();
+
+        telemetry.report(OnboardingTelemetry.SDK_INIT_ID, "{\"companyId\":\"c\"}");
+        telemetry.report(OnboardingTelemetry.SDK_INIT_ID, "{\"companyId\":\"c\"}");
+        assertEquals(0, server.getRequestCount());
+        assertEquals(1, telemetry.size());
+
+        now.addAndGet(OnboardingTelemetry.STARTUP_DELAY_MILLIS);
+        telemetry.drainIfDue();
+
+        assertEquals("/V1/onboarding/sdk-init", server.takeRequest().getPath());
+        assertEquals(Collections.singletonList(OnboardingTelemetry.SDK_INIT_ID), delivered);
+        assertEquals(0, telemetry.size());
+    }
+
+    @Test
+    public void failureBackoffSurvivesARestart() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        OnboardingTelemetry telemetry = telemetry();
+        telemetry.report(OnboardingTelemetry.ASSOCIATION_ID_PREFIX + "SAVE20-abc", "{}");
+
+        assertEquals(1, server.getRequestCount());
+        long nextAttempt = store.getLong(OnboardingTelemetry.KEY_NEXT_ATTEMPT, 0);
+        assertTrue(nextAttempt >= now.get() + OnboardingTelemetry.BASE_BACKOFF_MILLIS / 2);
+
+        // The next launch, past the startup delay but inside the backoff, sends nothing
+        OnboardingTelemetry restarted = telemetry();
+        restarted.start();
+        assertEquals(1, restarted.size());
+        now.addAndGet(OnboardingTelemetry.STARTUP_DELAY_MILLIS);
+        restarted.drainIfDue();
+        assertEquals(1, server.getRequestCount());
+
+        server.enqueue(new MockResponse().setResponseCode(200));
+        now.set(Math.max(now.get(), nextAttempt));
+        restarted.drainIfDue();
+        assertEquals(2, server.getRequestCount());
+        assertEquals(Collections.singletonList(OnboardingTelemetry.ASSOCIATION_ID_PREFIX + "SAVE20-abc"), delivered);
+    }
+
+    @Test
+    public void dailyBudgetCapsRequests() {
+        int reports = OnboardingTelemetry.MAX_REQUESTS_PER_DAY + 2;
+        for (int i = 0; i < reports; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200));
+        }
+        OnboardingTelemetry telemetry = telemetry();
+        for (int i = 0; i < reports; i++) {
+            telemetry.report(OnboardingTelemetry.ASSOCIATION_ID_PREFIX + i, "{}");
+        }
+
+        assertEquals(OnboardingTelemetry.MAX_REQUESTS_PER_DAY, server.getRequestCount());
+        assertEquals(2, telemetry.size());
+
+        now.addAndGet(TimeUnit.DAYS.toMillis(1));
+        telemetry.drainIfDue();
+        assertEquals(reports, server.getRequestCount());
+        assertEquals(0, telemetry.size());
+    }
+}
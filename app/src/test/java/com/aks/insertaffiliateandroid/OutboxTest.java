@@ -0,0 +1,258 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Executor direct = Runnable::run;
+    private ScheduledExecutorService scheduler;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        file = new File(folder.getRoot(), "test.outbox");
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void deliveredEntriesAreRemovedFromDisk() {
+        List<String> sent = new ArrayList<>();
+        Outbox outbox = new Outbox("Test", file, 10, entry -> {
+            sent.add(entry.payload);
+            return Outbox.Result.DELIVERED;
+        }, direct, scheduler, direct);
+
+        outbox.enqueue("{\"eventName\":\"a\"}");
+        outbox.enqueue("{\"eventName\":\"b\"}");
+
+        assertEquals(2, sent.size());
+        assertTrue(outbox.pendingEntries().isEmpty());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void failedEntriesSurviveARestart() {
+        Outbox offline = new Outbox("Test", file, 10, entry -> Outbox.Result.RETRY, direct, scheduler, direct);
+        offline.enqueue("first");
+        offline.enqueue("second");
+        assertEquals(2, offline.pendingEntries().size());
+
+        // A new instance reading the same file stands in for a new process
+        List<String> sent = new ArrayList<>();
+        Outbox online = new Outbox("Test", file, 10, entry -> {
+            sent.add(entry.payload);
+            return Outbox.Result.DELIVERED;
+        }, direct, scheduler, direct);
+        online.drain();
+
+        assertEquals(2, sent.size());
+        assertEquals("first", sent.get(0));
+        assertEquals("second", sent.get(1));
+    }
+
+    @Test
+    public void enqueuedEntryIsOnDiskBeforeTheOutboxThreadRuns() {
+        // The outbox thread never gets to run, as if the process were killed right after enqueue
+        Executor stalled = task -> { };
+        Outbox killed = new Outbox("Test", file, 10, entry -> Outbox.Result.DELIVERED, stalled, scheduler, direct);
+        killed.enqueue("purchase");
+        killed.enqueueIfAbsent("token", "transaction", queued -> { });
+
+        List<String> sent = new ArrayList<>();
+        Outbox restarted = new Outbox("Test", file, 10, entry -> {
+            sent.add(entry.payload);
+            return Outbox.Result.DELIVERED;
+        }, direct, scheduler, direct);
+        restarted.drain();
+
+        assertEquals(2, sent.size());
+        assertEquals("purchase", sent.get(0));
+        assertEquals("transaction", sent.get(1));
+    }
+
+    @Test
+    public void enqueueDoesNoFileIoOnTheCallingThread() {
+        List<Runnable> diskLane = new ArrayList<>();
+        List<String> sent = new ArrayList<>();
+        Outbox outbox = new Outbox("Test", file, 10, entry -> {
+            sent.add(entry.payload);
+            return Outbox.Result.DELIVERED;
+        }, direct, scheduler, diskLane::add);
+        File journal = new File(file.getPath() + ".journal");
+
+        outbox.enqueue("purchase");
+        outbox.enqueueIfAbsent("token", "transaction", queued -> { });
+
+        // Nothing written or sent until the disk lane runs
+        assertFalse(journal.exists());
+        assertFalse(file.exists());
+        assertTrue(sent.isEmpty());
+        assertEquals(2, diskLane.size());
+
+        diskLane.forEach(Runnable::run);
+
+        assertEquals(2, sent.size());
+        assertEquals("purchase", sent.get(0));
+        assertEquals("transaction", sent.get(1));
+        assertFalse(journal.exists());
+    }
+
+    @Test
+    public void journalIsClearedOnceEntriesAreQueued() {
+        Outbox outbox = new Outbox("Test", file, 10, entry -> Outbox.Result.RETRY, direct, scheduler, direct);
+        outbox.enqueue("first");
+        outbox.enqueueIfAbsent("id", "second", queued -> { });
+        outbox.enqueueIfAbsent("id", "duplicate", queued -> { });
+
+        assertEquals(2, outbox.pendingEntries().size());
+        assertTrue(file.exists());
+        assertFalse(new File(file.getPath() + ".journal").exists());
+    }
+
+    @Test
+    public void skippedIdIsTreatedAsADuplicate() {
+        // Left in the journal by a process killed before its outbox thread ran
+        Outbox killed = new Outbox("Test", file, 10, entry -> Outbox.Result.DELIVERED, task -> { }, scheduler, direct);
+        killed.enqueueIfAbsent("token", "transaction", queued -> { });
+
+        Set<String> delivered = new HashSet<>();
+        List<String> sent = new ArrayList<>();
+        Outbox outbox = new Outbox("Test", file, 10, entry -> {
+            sent.add(entry.id);
+            delivered.add(entry.id);
+            return Outbox.Result.DELIVERED;
+        }, direct, scheduler, direct);
+        List<Boolean> results = new ArrayList<>();
+
+        // Delivered meanwhile by another path, so the reloaded copy is dropped unsent
+        delivered.add("token");
+        outbox.enqueueIfAbsent("token", "transaction", delivered::contains, results::add);
+        outbox.enqueueIfAbsent("other", "transaction", delivered::contains, results::add);
+        outbox.enqueueIfAbsent("other", "transaction", delivered::contains, results::add);
+
+        assertEquals(Arrays.asList(false, true, false), results);
+        assertEquals(Collections.singletonList("other"), sent);
+        assertTrue(outbox.pendingEntries().isEmpty());
+        assertFalse(file.exists());
+        assertFalse(new File(file.getPath() + ".journal").exists());
+    }
+
+    @Test
+    public void retryBacksOffEvenWhenPartOfTheBatchWasGivenUp() throws Exception {
+        // "a" is on its last attempt, "b" is not
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("{\"id\":\"a\",\"payload\":\"a\",\"createdAt\":0,\"attempts\":1}\n");
+            writer.write("{\"id\":\"b\",\"payload\":\"b\",\"createdAt\":0,\"attempts\":0}\n");
+        }
+        List<Integer> requests = new ArrayList<>();
+        Outbox outbox = new Outbox("Test", file, 10, 2, entry -> {
+            requests.add(1);
+            return Outbox.Result.RETRY;
+        }, direct, scheduler, direct);
+        outbox.setBatching(batch -> {
+            requests.add(batch.size());
+            return Outbox.Result.RETRY;
+        }, 2, 60_000);
+
+        outbox.drain();
+
+        // "b" waits for the backoff instead of being resent straight away
+        assertEquals(1, requests.size());
+        assertEquals(1, outbox.pendingEntries().size());
+        assertEquals("b", outbox.pendingEntries().get(0).id);
+    }
+
+    @Test
+    public void scheduledUploadCompletesOnlyOnceTheEntriesAreSent() throws Exception {
+        ExecutorService lane = Executors.newSingleThreadExecutor();
+        try {
+            List<String> sent = Collections.synchronizedList(new ArrayList<>());
+            List<UploadScheduler.Task> scheduled = new ArrayList<>();
+            Outbox outbox = new Outbox("Test", file, 10, entry -> {
+                sent.add(entry.payload);
+                return Outbox.Result.DELIVERED;
+            }, lane, scheduler, direct);
+            outbox.setUploadScheduler((name, min, max, task) -> scheduled.add(task), 60_000);
+            outbox.enqueue("deferred");
+            lane.submit(() -> { }).get(5, TimeUnit.SECONDS); // Waits for the enqueue to reach the lane
+            assertEquals(1, scheduled.size());
+            assertTrue(sent.isEmpty());
+
+            // What the worker blocks on: done means sent, not merely posted to the lane
+            scheduled.get(0).run().get(5, TimeUnit.SECONDS);
+            assertEquals(Collections.singletonList("deferred"), sent);
+        } finally {
+            lane.shutdownNow();
+        }
+    }
+
+    @Test
+    public void oldestEntryIsEvictedWhenFull() {
+        Outbox outbox = new Outbox("Test", file, 2, entry -> Outbox.Result.RETRY, direct, scheduler, direct);
+        outbox.enqueue("one");
+        outbox.enqueue("two");
+        outbox.enqueue("three");
+
+        List<Outbox.Entry> pending = outbox.pendingEntries();
+        assertEquals(2, pending.size());
+        assertEquals("two", pending.get(0).payload);
+        assertEquals("three", pending.get(1).payload);
+    }
+
+    @Test
+    public void droppedEntriesAreNotRetried() {
+        Outbox outbox = new Outbox("Test", file, 10, entry -> Outbox.Result.DROP, direct, scheduler, direct);
+        outbox.enqueue("bad");
+        assertTrue(outbox.pendingEntries().isEmpty());
+    }
+
+    @Test
+    public void completionListenerSeesFinalOutcome() {
+        List<Outbox.Result> results = new ArrayList<>();
+        Outbox outbox = new Outbox("Test", file, 1, entry -> {
+            entry.lastStatusCode = 500;
+            return Outbox.Result.RETRY;
+        }, direct, scheduler, direct);
+
+        outbox.enqueue("evicted", (entry, result) -> results.add(result));
+        assertTrue(results.isEmpty());
+
+        outbox.enqueue("newest");
+        assertEquals(1, results.size());
+        assertEquals(Outbox.Result.DROP, results.get(0));
+    }
+
+    @Test
+    public void backoffGrowsAndIsCapped() {
+        assertTrue(Outbox.backoffMillis(0) <= Outbox.BASE_BACKOFF_MILLIS);
+        assertTrue(Outbox.backoffMillis(3) >= Outbox.BASE_BACKOFF_MILLIS * 4);
+        assertTrue(Outbox.backoffMillis(30) <= Outbox.MAX_BACKOFF_MILLIS);
+    }
+}
@@ -0,0 +1,77 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReferrerParamsTest {
+
+    @Test
+    public void parsesEveryParameterInOrder() {
+        ReferrerParams params = ReferrerParams.parse("utm_source=google-play&utm_medium=organic&utm_campaign=spring&insertAffiliate=SAVE20");
+
+        assertEquals("SAVE20", params.insertAffiliate());
+        assertEquals("google-play", params.get("utm_source"));
+        assertEquals(Arrays.asList("utm_source", "utm_medium", "utm_campaign", "insertAffiliate"),
+                Arrays.asList(params.asMap().keySet().toArray()));
+    }
+
+    @Test
+    public void decodesPercentEscapesAndPlus() {
+        ReferrerParams params = ReferrerParams.parse(
+                "insertAffiliate=https%3A%2F%2Finsertaffiliate.link%2Fc%2FSAVE20%3Fa%3D1%26b%3D2&utm_campaign=spring+sale&utm_term=%C3%BCber%F0%9F%98%80");
+
+        assertEquals("https://insertaffiliate.link/c/SAVE20?a=1&b=2", params.insertAffiliate());
+        assertEquals("spring sale", params.get("utm_campaign"));
+        assertEquals("über😀", params.get("utm_term"));
+    }
+
+    @Test
+    public void matchesUrlDecoderOnWellFormedInput() throws Exception {
+        String[] samples = {"plain", "a%20b", "a+b", "%E2%82%AC5", "café", "%2B%2b", "😀%21"};
+        for (String sample : samples) {
+            assertEquals(sample, URLDecoder.decode(sample, StandardCharsets.UTF_8.name()), ReferrerParams.decode(sample, 0, sample.length()));
+        }
+    }
+
+    @Test
+    public void malformedEscapesAreKept() {
+        assertEquals("100%", ReferrerParams.parse("p=100%").get("p"));
+        assertEquals("%zz", ReferrerParams.parse("p=%zz").get("p"));
+        assertEquals("%4", ReferrerParams.parse("p=%4").get("p"));
+    }
+
+    @Test
+    public void handlesEmptyAndOddSegments() {
+        assertTrue(ReferrerParams.parse(null).isEmpty());
+        assertTrue(ReferrerParams.parse("").isEmpty());
+        assertTrue(ReferrerParams.parse("&&=x&").isEmpty());
+
+        ReferrerParams params = ReferrerParams.parse("flag&empty=&a=1=2&a=ignored");
+        assertEquals("", params.get("flag"));
+        assertEquals("", params.get("empty"));
+        assertEquals("1=2", params.get("a"));
+        assertNull(params.insertAffiliate());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void mapIsImmutable() {
+        Map<String, String> map = ReferrerParams.parse("a=1").asMap();
+        map.put("b", "2");
+    }
+
+    @Test
+    public void fastPathAgreesWithParse() {
+        String[] samples = {null, "", "insertAffiliate=SAVE20", "utm_source=x&insertAffiliate=SAVE%2D20",
+                "insertAffiliateX=1&insertAffiliate=2", "xinsertAffiliate=1", "insertAffiliate", "insertAffiliate=",
+                "utm_source=google&utm_medium=cpc"};
+        for (String sample : samples) {
+            assertEquals(sample, ReferrerParams.parse(sample).insertAffiliate(), ReferrerParams.insertAffiliate(sample));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class SdkCallTest {
+    private final List<Object> results = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        ApiClient.setTimeouts(ApiClient.DEFAULT_CONNECT_TIMEOUT_MILLIS, ApiClient.DEFAULT_READ_TIMEOUT_MILLIS, ApiClient.DEFAULT_CALL_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void resultIsDeliveredOnce() {
+        SdkCall call = SdkCall.start("Test", CallOptions.DEFAULT, results::add);
+        call.complete("first");
+        call.complete("second");
+
+        assertEquals(Collections.singletonList("first"), results);
+        assertTrue(call.isDone());
+        assertFalse(call.cancel());
+    }
+
+    @Test
+    public void cancelledCallNeverCallsBack() {
+        SdkCall call = SdkCall.start("Test", CallOptions.DEFAULT, results::add);
+        assertTrue(call.cancel());
+        call.complete("late");
+
+        assertTrue(results.isEmpty());
+        assertTrue(call.isCancelled());
+    }
+
+    @Test
+    public void cancelAllCancelsPendingCalls() {
+        SdkCall first = SdkCall.start("Test", CallOptions.DEFAULT, results::add);
+        SdkCall second = SdkCall.start("Test", CallOptions.DEFAULT, results::add);
+        SdkCall.cancelAll();
+
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    public void deadlineDeliversNullAndCountsTimeout() throws InterruptedException {
+        long timedOutBefore = SdkMetrics.snapshot().totalTimeouts();
+        CountDownLatch delivered = new CountDownLatch(1);
+        SdkCall call = SdkCall.start("Test", CallOptions.timeout(50), result -> {
+            results.add(String.valueOf(result));
+            delivered.countDown();
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        call.complete("late");
+        assertEquals(Collections.singletonList("null"), results);
+        assertFalse(call.isCancelled());
+        assertEquals(timedOutBefore + 1, SdkMetrics.snapshot().endpoints.get("Test").timeouts);
+    }
+
+    @Test
+    public void deadlineFiresOnTimeWhileIoIsSaturated() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Every io() worker stuck in a hung request (e.g. behind a captive portal)
+            for (int i = 0; i < SdkExecutors.DEFAULT_IO_PARALLELISM; i++) {
+                SdkExecutors.io().execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            CountDownLatch delivered = new CountDownLatch(1);
+            long start = System.nanoTime();
+            SdkCall.start("Test", CallOptions.timeout(100), result -> delivered.countDown());
+
+            assertTrue(delivered.await(2, TimeUnit.SECONDS));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void hangingServerHitsTheReadTimeout() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.start();
+        try {
+            ApiClient.setTimeouts(1_000, 200, 5_000);
+            long timedOutBefore = SdkMetrics.snapshot().totalTimeouts();
+            long start = System.nanoTime();
+            try {
+                ApiClient.http().newCall(new Request.Builder().url(server.url("/")).build()).execute().close();
+                fail("Expected a timeout");
+            } catch (InterruptedIOException expected) {
+                // SocketTimeoutException
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+            assertEquals(timedOutBefore + 1, SdkMetrics.snapshot().totalTimeouts());
+        } finally {
+            server.shutdown();
+        }
+    }
+}
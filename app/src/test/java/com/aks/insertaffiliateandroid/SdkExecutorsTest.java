@@ -0,0 +1,34 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SdkExecutorsTest {
+    @Test
+    public void diskWritesDoNotWaitBehindBlockedNetworkWork() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Every io() worker stuck in a hung request
+            for (int i = 0; i < SdkExecutors.DEFAULT_IO_PARALLELISM; i++) {
+                SdkExecutors.io().execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            CountDownLatch written = new CountDownLatch(1);
+            SdkExecutors.disk().execute(written::countDown);
+
+            assertTrue(written.await(2, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
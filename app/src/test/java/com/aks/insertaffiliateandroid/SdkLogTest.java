@@ -0,0 +1,81 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SdkLogTest {
+    private final List<String> lines = new ArrayList<>();
+    private final SdkLog.Sink recording = (priority, tag, message) -> lines.add(priority + " " + message);
+
+    @After
+    public void tearDown() {
+        SdkLog.setVerbose(false);
+        SdkLog.setSink(null);
+    }
+
+    @Test
+    public void verboseMessagesAreNotBuiltWhenDisabled() {
+        SdkLog.setSink(recording);
+        SdkLog.setVerbose(false);
+        AtomicInteger built = new AtomicInteger();
+
+        SdkLog.v(() -> "expensive " + built.incrementAndGet());
+        SdkLog.v("Found identifier: {}", "ABC-123");
+
+        assertEquals(0, built.get());
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    public void verboseMessagesArePrefixedWhenEnabled() {
+        SdkLog.setSink(recording);
+        SdkLog.setVerbose(true);
+
+        SdkLog.v("Found identifier: {}", "ABC-123");
+        SdkLog.v(() -> "from supplier");
+
+        assertEquals(2, lines.size());
+        assertEquals(SdkLog.INFO + " [Insert Affiliate] [VERBOSE] Found identifier: ABC-123", lines.get(0));
+        assertEquals(SdkLog.INFO + " [Insert Affiliate] [VERBOSE] from supplier", lines.get(1));
+    }
+
+    @Test
+    public void debugTemplateIsOnlyFormattedForARealSink() {
+        AtomicInteger built = new AtomicInteger();
+        Object body = new Object() {
+            @Override
+            public String toString() {
+                return "body " + built.incrementAndGet();
+            }
+        };
+
+        SdkLog.setSink(SdkLog.NO_OP);
+        SdkLog.d("InsertAffiliate response: {}", body);
+        assertEquals(0, built.get());
+
+        SdkLog.setSink(recording);
+        SdkLog.d("InsertAffiliate response: {}", body);
+        assertEquals(Collections.singletonList(SdkLog.DEBUG + " InsertAffiliate response: body 1"), lines);
+    }
+
+    @Test
+    public void noOpSinkTurnsVerboseOff() {
+        SdkLog.setVerbose(true);
+        SdkLog.setSink(SdkLog.NO_OP);
+        assertFalse(SdkLog.isVerbose());
+    }
+
+    @Test
+    public void formatFillsPlaceholdersInOrder() {
+        assertEquals("a=1, b=two", SdkLog.format("a={}, b={}", 1, "two", null));
+        assertEquals("no placeholders", SdkLog.format("no placeholders", "x", null, null));
+        assertEquals("1 2 3 {}", SdkLog.format("{} {} {} {}", 1, 2, 3));
+    }
+}
@@ -0,0 +1,88 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class SdkMetricsTest {
+
+    @After
+    public void tearDown() {
+        SdkMetrics.setListener(null);
+        SdkMetrics.reset();
+    }
+
+    @Test
+    public void endpointNamesDropVersionAndPathParameters() {
+        assertEquals("checkAffiliateExists", SdkMetrics.endpointOf(HttpUrl.get("https://api.insertaffiliate.com/V1/checkAffiliateExists")));
+        assertEquals("trackEvent", SdkMetrics.endpointOf(HttpUrl.get("https://api.insertaffiliate.com/v1/trackEvent")));
+        assertEquals("onboarding/sdk-init", SdkMetrics.endpointOf(HttpUrl.get("https://api.insertaffiliate.com/V1/onboarding/sdk-init")));
+        assertEquals("affiliateReturnOfferCode",
+                SdkMetrics.endpointOf(HttpUrl.get("https://api.insertaffiliate.com/v1/affiliateReturnOfferCode/abc/SAVE20?platformType=android")));
+        assertEquals("convert-deep-link-to-short-link",
+                SdkMetrics.endpointOf(HttpUrl.get("https://api.insertaffiliate.com/V1/convert-deep-link-to-short-link?companyId=abc")));
+    }
+
+    @Test
+    public void latenciesFallIntoFixedBuckets() {
+        SdkMetrics.record("test", SdkMetrics.Outcome.SUCCESS, 200, 10);
+        SdkMetrics.record("test", SdkMetrics.Outcome.SUCCESS, 200, 80);
+        SdkMetrics.record("test", SdkMetrics.Outcome.FAILURE, 500, 90);
+        SdkMetrics.record("test", SdkMetrics.Outcome.TIMEOUT, 0, 60_000);
+
+        SdkMetrics.EndpointStats stats = SdkMetrics.snapshot().endpoints.get("test");
+        assertEquals(4, stats.count());
+        assertEquals(2, stats.successes);
+        assertEquals(1, stats.failures);
+        assertEquals(1, stats.timeouts);
+        long[] buckets = stats.latencyBuckets();
+        assertEquals(SdkMetrics.latencyBucketBoundsMillis().length + 1, buckets.length);
+        assertEquals(1, buckets[0]);
+        assertEquals(2, buckets[SdkMetrics.bucketOf(100)]);
+        assertEquals(1, buckets[buckets.length - 1]);
+        assertEquals(100, stats.latencyPercentileMillis(50));
+        assertEquals(60_000, stats.latencyPercentileMillis(100));
+    }
+
+    @Test
+    public void httpCallsAreRecordedAndReported() throws IOException {
+        List<String> heard = Collections.synchronizedList(new ArrayList<>());
+        SdkMetrics.setListener((endpoint, outcome, statusCode, latencyMillis) -> heard.add(endpoint + " " + outcome + " " + statusCode));
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.start();
+        try {
+            for (int i = 0; i < 2; i++) {
+                ApiClient.http().newCall(new Request.Builder().url(server.url("/V1/checkAffiliateExists")).build()).execute().close();
+            }
+        } finally {
+            server.shutdown();
+        }
+
+        SdkMetrics.EndpointStats stats = SdkMetrics.snapshot().endpoints.get("checkAffiliateExists");
+        assertEquals(1, stats.successes);
+        assertEquals(1, stats.failures);
+        assertEquals(List.of("checkAffiliateExists SUCCESS 200", "checkAffiliateExists FAILURE 500"), heard);
+    }
+
+    @Test
+    public void queueDepthsAreReadAtSnapshotTime() {
+        int[] depth = {3};
+        SdkMetrics.registerQueue("testQueue", () -> depth[0]);
+        assertEquals(Integer.valueOf(3), SdkMetrics.snapshot().queueDepths.get("testQueue"));
+        depth[0] = 0;
+        assertEquals(Integer.valueOf(0), SdkMetrics.snapshot().queueDepths.get("testQueue"));
+    }
+}
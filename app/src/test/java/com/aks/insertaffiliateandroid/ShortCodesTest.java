@@ -0,0 +1,49 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShortCodesTest {
+
+    @Test
+    public void shortCodeMatchesTheOriginalRegex() {
+        String[] samples = {null, "", "ab", "abc", "SAVE20", "save20", "A1B2C3D4E5F6G7H8I9J0K1L2M", "A1B2C3D4E5F6G7H8I9J0K1L2M3",
+                "SAVE-20", "SAVE 20", "https://insertaffiliate.link/x", "\u00C4BC", "abc\n"};
+        for (String sample : samples) {
+            boolean expected = sample != null && sample.matches("^[a-zA-Z0-9]{3,25}$");
+            assertEquals("isShortCode(" + sample + ")", expected, ShortCodes.isShortCode(sample));
+        }
+    }
+
+    @Test
+    public void normalizeUppercasesValidCodesOnly() {
+        assertEquals("SAVE20", ShortCodes.normalize("save20"));
+        assertNull(ShortCodes.normalize("no"));
+        assertNull(ShortCodes.normalize("SAVE-20"));
+        assertNull(ShortCodes.normalize("save-20"));
+        assertNull(ShortCodes.normalize(null));
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXY", ShortCodes.normalize("abcdefghijklmnopqrstuvwxy"));
+        assertNull(ShortCodes.normalize("abcdefghijklmnopqrstuvwxyz"));
+        String upper = "SAVE20";
+        assertSame(upper, ShortCodes.normalize(upper));
+    }
+
+    @Test
+    public void alreadyCleanValuesAreReturnedUnchanged() {
+        String upper = "SAVE20";
+        assertSame(upper, ShortCodes.toUpperAscii(upper));
+        String offerCode = "-oneweekfree_v2";
+        assertSame(offerCode, ShortCodes.cleanOfferCode(offerCode));
+    }
+
+    @Test
+    public void offerCodeCleaningMatchesTheOriginalRegex() {
+        String[] samples = {"\"-oneweekfree\"", "-oneweekfree\n", "abc def!@#", "", "___", "\u00FC-promo"};
+        for (String sample : samples) {
+            assertEquals(sample.replaceAll("[^a-zA-Z0-9_-]", ""), ShortCodes.cleanOfferCode(sample));
+            assertEquals(sample.replaceAll("[^a-zA-Z0-9]", ""), ShortCodes.removeSpecialCharacters(sample));
+        }
+        assertEquals("", ShortCodes.cleanOfferCode(null));
+    }
+}
@@ -0,0 +1,190 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightCacheTest {
+    private static final long TTL = 10_000;
+    private static final long NOT_FOUND_TTL = 1_000;
+    private static final long STALE = 60_000;
+
+    private final AffiliateStateStoreTest.ManualExecutor executor = new AffiliateStateStoreTest.ManualExecutor();
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SingleFlightCache<String, String> cache =
+            new SingleFlightCache<>("Test", 2, TTL, NOT_FOUND_TTL, STALE, executor, now::get);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<String> results = new ArrayList<>();
+
+    private SingleFlightCache.Loaded<String> next = SingleFlightCache.Loaded.found("OFFER1");
+
+    private void get(String key) {
+        cache.get(key, k -> {
+            loads.incrementAndGet();
+            return next;
+        }, results::add);
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLoad() {
+        get("link");
+        get("link");
+        get("link");
+        assertTrue(results.isEmpty());
+
+        executor.runAll();
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of("OFFER1", "OFFER1", "OFFER1"), results);
+    }
+
+    @Test
+    public void freshHitsAreServedWithoutLoading() {
+        get("link");
+        executor.runAll();
+
+        now.addAndGet(TTL - 1);
+        get("link");
+        executor.runAll();
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of("OFFER1", "OFFER1"), results);
+    }
+
+    @Test
+    public void hitsAreDeliveredAfterGetReturns() {
+        get("link");
+        cache.reload("missing", k -> SingleFlightCache.Loaded.notFound(), results::add);
+        executor.runAll();
+        results.clear();
+
+        get("link");
+        cache.reload("missing", k -> next, results::add);
+
+        // Neither the hit nor the cached "not found" ran on the caller's thread
+        assertTrue(results.isEmpty());
+        executor.runAll();
+        assertEquals(Arrays.asList("OFFER1", null), results);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void staleValueIsServedWhileRefreshing() {
+        get("link");
+        executor.runAll();
+
+        now.addAndGet(TTL + 1);
+        next = SingleFlightCache.Loaded.found("OFFER2");
+        get("link");
+        get("link");
+        executor.runAll();
+
+        // Both callers get the stale value, with a single refresh
+        assertEquals(List.of("OFFER1", "OFFER1", "OFFER1"), results);
+        assertEquals(2, loads.get());
+
+        get("link");
+        executor.runAll();
+        assertEquals(2, loads.get());
+        assertEquals("OFFER2", results.get(results.size() - 1));
+    }
+
+    @Test
+    public void valuesPastTheStaleWindowAreReloaded() {
+        get("link");
+        executor.runAll();
+
+        now.addAndGet(TTL + STALE);
+        get("link");
+        assertEquals(1, results.size());
+
+        executor.runAll();
+        assertEquals(2, loads.get());
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void notFoundIsCachedForItsOwnTtl() {
+        next = SingleFlightCache.Loaded.notFound();
+        get("link");
+        executor.runAll();
+
+        get("link");
+        assertEquals(1, loads.get());
+
+        now.addAndGet(NOT_FOUND_TTL);
+        get("link");
+        executor.runAll();
+        assertEquals(2, loads.get());
+        assertEquals(Arrays.asList(null, null, null), results);
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        next = SingleFlightCache.Loaded.failed();
+        get("link");
+        executor.runAll();
+        get("link");
+        executor.runAll();
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedKeyIsEvicted() {
+        get("a");
+        get("b");
+        executor.runAll();
+        get("a");
+        get("c");
+        executor.runAll();
+
+        assertEquals(2, cache.size());
+        assertEquals(3, loads.get());
+        get("a");
+        executor.runAll();
+        assertEquals(3, loads.get());
+        get("b");
+        executor.runAll();
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void invalidateAllIgnoresLoadsAlreadyRunning() {
+        get("link");
+        cache.invalidateAll();
+        executor.runAll();
+
+        assertEquals(List.of("OFFER1"), results);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void reloadAlwaysLoadsButSkipsKnownNotFound() {
+        get("link");
+        executor.runAll();
+
+        cache.reload("link", k -> {
+            loads.incrementAndGet();
+            return SingleFlightCache.Loaded.notFound();
+        }, results::add);
+        executor.runAll();
+        assertEquals(2, loads.get());
+
+        // The reload's answer replaced the cached value, so the next reload is answered locally
+        cache.reload("link", k -> {
+            loads.incrementAndGet();
+            return next;
+        }, results::add);
+        executor.runAll();
+        assertEquals(2, loads.get());
+        assertEquals(Arrays.asList("OFFER1", null, null), results);
+    }
+}
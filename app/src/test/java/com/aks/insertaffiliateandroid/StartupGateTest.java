@@ -0,0 +1,122 @@
+package com.aks.insertaffiliateandroid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class StartupGateTest {
+    private final StartupGate gate = new StartupGate();
+    private final List<String> calls = new ArrayList<>();
+
+    private void call(String name) {
+        if (!gate.deferIfInitializing(name, () -> call(name))) {
+            calls.add(name);
+        }
+    }
+
+    @Test
+    public void callsRunStraightAwayWhenNoInitIsRunning() {
+        call("trackEvent");
+        assertEquals(List.of("trackEvent"), calls);
+        assertFalse(gate.ready().isDone());
+    }
+
+    @Test
+    public void callsMadeDuringInitAreReplayedInOrder() {
+        CompletableFuture<Void> ready = gate.begin();
+        call("first");
+        call("second");
+        assertTrue(calls.isEmpty());
+
+        ready.thenRun(() -> calls.add("ready"));
+        gate.finish();
+
+        assertEquals(List.of("first", "second", "ready"), calls);
+        call("third");
+        assertEquals("third", calls.get(3));
+    }
+
+    @Test
+    public void readsSeeInitAsRunningExceptFromReplayedCalls() {
+        assertFalse(gate.isInitializing());
+        gate.begin();
+        assertTrue(gate.isInitializing());
+
+        // A replayed getter must not wait for the init it is part of
+        List<Boolean> seenByReplay = new ArrayList<>();
+        gate.deferIfInitializing("getUniqueId", () -> seenByReplay.add(gate.isInitializing()));
+        gate.finish();
+
+        assertEquals(List.of(false), seenByReplay);
+        assertFalse(gate.isInitializing());
+    }
+
+    @Test
+    public void callsMadeByReplayedCallsRunInline() {
+        gate.begin();
+        gate.deferIfInitializing("outer", () -> {
+            calls.add("outer");
+            call("nested");
+        });
+        call("after");
+        gate.finish();
+
+        assertEquals(List.of("outer", "nested", "after"), calls);
+    }
+
+    @Test
+    public void queueIsBounded() {
+        gate.begin();
+        for (int i = 0; i < StartupGate.MAX_PENDING_CALLS + 5; i++) {
+            call("call" + i);
+        }
+        gate.finish();
+        assertEquals(StartupGate.MAX_PENDING_CALLS, calls.size());
+    }
+
+    @Test
+    public void resetDropsQueuedCallsAndStartsOver() {
+        gate.begin();
+        call("dropped");
+        gate.finish();
+        CompletableFuture<Void> first = gate.ready();
+
+        gate.begin();
+        call("dropped");
+        gate.reset();
+        assertTrue(first.isDone());
+        assertFalse(gate.ready().isDone());
+
+        call("direct");
+        assertEquals(List.of("dropped", "direct"), calls);
+    }
+
+    @Test
+    public void deferredInitStartsOnFirstQueuedCall() {
+        gate.beginDeferred(() -> calls.add("start"));
+        assertTrue(calls.isEmpty());
+
+        call("trackEvent");
+        call("setShortCode");
+        assertEquals(List.of("start"), calls);
+
+        gate.finish();
+        assertEquals(List.of("start", "trackEvent", "setShortCode"), calls);
+    }
+
+    @Test
+    public void askingForReadinessStartsDeferredInit() {
+        gate.beginDeferred(() -> calls.add("start"));
+        CompletableFuture<Void> ready = gate.ready();
+        gate.ready();
+
+        assertEquals(List.of("start"), calls);
+        assertFalse(ready.isDone());
+        gate.finish();
+        assertTrue(ready.isDone());
+    }
+}
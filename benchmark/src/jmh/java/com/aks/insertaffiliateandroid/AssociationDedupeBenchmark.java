@@ -0,0 +1,65 @@
+package com.aks.insertaffiliateandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The "already reported?" check made before every affiliate association report.
+ * Persistence is handed to a no-op executor so only the in-memory lookup is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AssociationDedupeBenchmark {
+    @Param({"16", "256"})
+    public int storedAssociations;
+
+    private File file;
+    private AssociationDedupeStore store;
+    private String reported;
+    private String unseen;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("associations", ".bin");
+        file.delete();
+        store = new AssociationDedupeStore(file, 256, TimeUnit.DAYS.toMillis(180), runnable -> { }, System::currentTimeMillis);
+        for (int i = 0; i < storedAssociations; i++) {
+            store.add("CODE" + i + "-a1b2c3");
+        }
+        reported = "CODE" + (storedAssociations / 2) + "-a1b2c3";
+        unseen = "NEWCODE-a1b2c3";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public boolean containsReported() {
+        return store.contains(reported);
+    }
+
+    @Benchmark
+    public boolean containsUnseen() {
+        return store.contains(unseen);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return AssociationDedupeStore.fingerprint(reported);
+    }
+}
@@ -0,0 +1,48 @@
+package com.aks.insertaffiliateandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identifier resolution as done by returnInsertAffiliateIdentifier on every call, once the
+ * {@link AffiliateState} snapshot is in memory (reading it is a single volatile field read).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdentifierBenchmark {
+    @Param({"false", "true"})
+    public boolean verbose;
+
+    @Param({"0", "604800"})
+    public long timeoutSeconds;
+
+    private AffiliateState state;
+    private long nowSeconds;
+
+    @Setup
+    public void setUp() {
+        SdkLog.setSink((priority, tag, message) -> { });
+        SdkLog.setVerbose(verbose);
+        nowSeconds = System.currentTimeMillis() / 1000;
+        state = new AffiliateState("SAVE20", "a1b2c3", nowSeconds - 3600, "oneweekfree");
+    }
+
+    @Benchmark
+    public String resolveIdentifier() {
+        return state.resolveIdentifier(false, nowSeconds, timeoutSeconds);
+    }
+
+    @Benchmark
+    public boolean isAttributionValid() {
+        return state.isAttributionValid(nowSeconds, timeoutSeconds);
+    }
+}
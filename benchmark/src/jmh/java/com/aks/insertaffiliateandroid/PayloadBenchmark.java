@@ -0,0 +1,69 @@
+package com.aks.insertaffiliateandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body building for trackEvent and storeExpectedPlayStoreTransaction, plus reading
+ * a Play install referrer (insertAffiliate alone, and every parameter).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadBenchmark {
+    public String eventName = "purchase_started";
+    public String companyCode = "c3b1a7f0d9e84e2b";
+    public String identifier = "SAVE20-a1b2c3";
+    public String purchaseToken = "opaque-token-mbkmkfhkgcjlnhcmdpbjhdnf.AO-J1OxyzQZt1p3y5Qn8j0m0K2kT6Vd0sX2q9wq4uHk";
+    public String storedDate = "2026-10-17T09:30:00Z";
+    public String referrer = "utm_source=google-play&utm_medium=organic&utm_campaign=spring&insertAffiliate=SAVE20";
+    public String encodedReferrer = "utm_source=google-play&utm_campaign=spring%20sale&insertAffiliate=https%3A%2F%2Finsertaffiliate.link%2Fc%2FSAVE20";
+
+    @Benchmark
+    public String trackEventPayload() {
+        return Payloads.trackEvent(eventName, companyCode, identifier);
+    }
+
+    @Benchmark
+    public String expectedTransactionPayload() {
+        return Payloads.expectedTransaction(purchaseToken, companyCode, identifier, storedDate);
+    }
+
+    @Benchmark
+    public String installReferrerParam() {
+        return ReferrerParams.insertAffiliate(referrer);
+    }
+
+    /**
+     * The contains/split/startsWith lookup that ReferrerParams replaced; it did not decode.
+     */
+    @Benchmark
+    public String installReferrerParamSplit() {
+        String prefix = ReferrerParams.INSERT_AFFILIATE + "=";
+        if (!referrer.contains(prefix)) {
+            return null;
+        }
+        for (String param : referrer.split("&")) {
+            if (param.startsWith(prefix)) {
+                return param.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public ReferrerParams installReferrerParse() {
+        return ReferrerParams.parse(referrer);
+    }
+
+    @Benchmark
+    public ReferrerParams installReferrerParseEncoded() {
+        return ReferrerParams.parse(encodedReferrer);
+    }
+}
@@ -0,0 +1,59 @@
+package com.aks.insertaffiliateandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ShortCodes} with the String.matches/replaceAll code it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShortCodesBenchmark {
+    @Param({"SAVE20", "save20", "https://insertaffiliate.link/company/SAVE20"})
+    public String shortCode;
+
+    @Param({"-oneweekfree", "\"-oneweekfree\"\n"})
+    public String offerCode;
+
+    @Benchmark
+    public boolean isShortCodeRegex() {
+        return shortCode != null && shortCode.matches("^[a-zA-Z0-9]{3,25}$");
+    }
+
+    @Benchmark
+    public boolean isShortCode() {
+        return ShortCodes.isShortCode(shortCode);
+    }
+
+    @Benchmark
+    public String normalizeRegex() {
+        String upper = shortCode.toUpperCase();
+        if (upper.length() < 3 || upper.length() > 25 || !upper.matches("^[a-zA-Z0-9]+$")) {
+            return null;
+        }
+        return upper;
+    }
+
+    @Benchmark
+    public String normalize() {
+        return ShortCodes.normalize(shortCode);
+    }
+
+    @Benchmark
+    public String cleanOfferCodeRegex() {
+        return offerCode.replaceAll("[^a-zA-Z0-9_-]", "");
+    }
+
+    @Benchmark
+    public String cleanOfferCode() {
+        return ShortCodes.cleanOfferCode(offerCode);
+    }
+}